@@ -0,0 +1,54 @@
+package se.jensen.sofi_n.web_inventory;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/// The ArticleIdBenchmark class measures Inventory.generateArticleID on generated catalogs from a thousand to a
+/// million products. The catalog is reloaded before each iteration, so every iteration starts from a freshly loaded
+/// allocator.
+///
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArticleIdBenchmark {
+    /// Attributes
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private File directory;
+    private File[] files;
+    private Inventory inventory;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        directory = CatalogGenerator.tempDirectory();
+        files = CatalogGenerator.writeFiles(size, directory);
+    }
+
+    @Setup(Level.Iteration)
+    public void load() {
+        inventory = new Inventory(new SilentUI(), files[0].getPath(), files[1].getPath());
+    }
+
+    @TearDown(Level.Iteration)
+    public void close() {
+        inventory.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CatalogGenerator.delete(directory);
+    }
+
+    /// Benchmarks
+    @Benchmark
+    public int generateArticleID() {
+        return inventory.generateArticleID();
+    }
+}
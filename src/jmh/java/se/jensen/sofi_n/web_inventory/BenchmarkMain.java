@@ -0,0 +1,36 @@
+package se.jensen.sofi_n.web_inventory;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+
+/// The BenchmarkMain class is the entry point of benchmarks.jar. It takes the usual JMH command line options, like a
+/// benchmark name pattern or -p size=1000, and always adds the GC profiler, so every result also shows the
+/// allocation rate and bytes allocated per operation (gc.alloc.rate and gc.alloc.rate.norm).
+///
+/// Build and run:  mvn -Pbenchmarks package  then  java -jar target/benchmarks.jar [JMH options]
+///
+public class BenchmarkMain {
+    /*The main function parses the JMH options, adds the GC profiler and runs the matching benchmarks*/
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException, IOException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        if (options.shouldHelp()) {
+            options.showHelp();
+            return;
+        }
+        Runner runner = new Runner(new OptionsBuilder()
+                .parent(options)
+                .addProfiler(GCProfiler.class)
+                .build());
+        if (options.shouldList()) {
+            runner.list();
+        } else {
+            runner.run();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/// The CatalogGenerator class creates synthetic catalogs for the benchmarks. The same size always gives the same
+/// products, so results from different runs and branches can be compared. Article IDs start at 10000 like in the
+/// Inventory, with every hundredth ID left out so the catalogs have gaps like a catalog where products were removed.
+///
+/// The variant catalog is closer to a real shop's: products come in families of flavours and sizes that share a
+/// description and a nutrient table, and differ only in the end of the name, price and stock.
+///
+public class CatalogGenerator {
+    /// Attributes
+    private static final long SEED = 20240601L;
+    private static final int LOWEST_ID = 10000;
+    private static final String[] WORDS = {
+            "Protein", "Vanilla", "Chocolate", "Shaker", "Energy", "Berry", "Citrus", "Whey", "Bar", "Crunch",
+            "Bottle", "Gloves", "Strap", "Mango", "Caramel", "Peanut", "Isolate", "Vegan", "Zero", "Max"
+    };
+    private static final String[] VARIANTS = {
+            "Vanilla 500 g", "Vanilla 1 kg", "Chocolate 500 g", "Chocolate 1 kg", "Strawberry 500 g",
+            "Strawberry 1 kg", "Unflavoured 2.5 kg", "Black", "Blue", "Pink", "Small", "Medium", "Large",
+            "Mango 330 ml", "Citrus 330 ml", "Berry 500 ml"
+    };
+    private static final int MIN_FAMILY_SIZE = 3;
+    private static final int MAX_FAMILY_SIZE = 8;
+
+    /*The products function returns a list of the passed number of products, mixed between all four categories,
+    * with nutrient tables set on the food products*/
+    public static List<Product> products(int size) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        List<Product> products = new ArrayList<>(size);
+        int id = LOWEST_ID;
+        for (int i = 0; i < size; i++) {
+            if (id % 100 == 99) {
+                id++; //gap
+            }
+            Product product = switch (random.nextInt(4)) {
+                case 0 -> new Accessory(id);
+                case 1 -> new EnergyDrink(id);
+                case 2 -> new ProteinBar(id);
+                default -> new ProteinPowder(id);
+            };
+            product.setName(words(random, 2));
+            product.setPrice(random.nextInt(1, 100000) / 100.0);
+            product.setDescription(words(random, 6 + random.nextInt(10)));
+            product.setStock(random.nextInt(1000));
+            if (product instanceof EnergyDrink) {
+                ((EnergyDrink) product).setNutrientTable(random.nextInt(300), random.nextInt(20),
+                        random.nextInt(60), random.nextInt(10), random.nextInt(300));
+            } else if (product instanceof FoodProduct) {
+                ((FoodProduct) product).setNutrientTable(random.nextInt(500), random.nextInt(30),
+                        random.nextInt(80), random.nextInt(50));
+            }
+            products.add(product);
+            id++;
+        }
+        return products;
+    }
+
+    /*The variantProducts function returns a list of the passed number of products in families of 3 to 8 variants.
+    * The variants of a family are of the same category and share a description and nutrient table, and their names
+    * are the family name followed by a flavour, colour or size.*/
+    public static List<Product> variantProducts(int size) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        List<Product> products = new ArrayList<>(size);
+        int id = LOWEST_ID;
+        while (products.size() < size) {
+            int category = random.nextInt(4);
+            String family = words(random, 2) + " " + (1 + random.nextInt(99)); //model number, for more families
+            String description = words(random, 6 + random.nextInt(10));
+            int[] nutrients = {random.nextInt(500), random.nextInt(30), random.nextInt(80), random.nextInt(50),
+                    random.nextInt(300)};
+            int familySize = Math.min(random.nextInt(MIN_FAMILY_SIZE, MAX_FAMILY_SIZE + 1), size - products.size());
+            int firstVariant = random.nextInt(VARIANTS.length);
+            for (int v = 0; v < familySize; v++) {
+                if (id % 100 == 99) {
+                    id++; //gap
+                }
+                Product product = switch (category) {
+                    case 0 -> new Accessory(id);
+                    case 1 -> new EnergyDrink(id);
+                    case 2 -> new ProteinBar(id);
+                    default -> new ProteinPowder(id);
+                };
+                product.setName(family + " " + VARIANTS[(firstVariant + v) % VARIANTS.length]);
+                product.setPrice(random.nextInt(1, 100000) / 100.0);
+                product.setDescription(description);
+                product.setStock(random.nextInt(1000));
+                if (product instanceof EnergyDrink) {
+                    ((EnergyDrink) product).setNutrientTable(nutrients[0], nutrients[1], nutrients[2], nutrients[3],
+                            nutrients[4]);
+                } else if (product instanceof FoodProduct) {
+                    ((FoodProduct) product).setNutrientTable(nutrients[0], nutrients[1], nutrients[2], nutrients[3]);
+                }
+                products.add(product);
+                id++;
+            }
+        }
+        return products;
+    }
+
+    /*The writeFiles function writes a catalog of the passed size as a products file and a nutrient table file in the
+    * passed directory, in the same format the Inventory saves them, and returns the two files*/
+    public static File[] writeFiles(int size, File directory) throws IOException {
+        return writeFiles(products(size), directory);
+    }
+
+    /*The writeFiles function works like the one above, but writes the passed products*/
+    public static File[] writeFiles(List<Product> products, File directory) throws IOException {
+        File productFile = new File(directory, "products.txt");
+        File nutrientFile = new File(directory, "nutrients.txt");
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(productFile)))) {
+            for (Product product : products) {
+                out.println(product.serialize());
+            }
+        }
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(nutrientFile)))) {
+            for (Product product : products) {
+                if (product instanceof FoodProduct) {
+                    out.println(((FoodProduct) product).serializeNutrientValues());
+                }
+            }
+        }
+        return new File[]{productFile, nutrientFile};
+    }
+
+    /*The tempDirectory function creates an empty directory for one benchmark's files*/
+    public static File tempDirectory() throws IOException {
+        return Files.createTempDirectory("inventory-bench").toFile();
+    }
+
+    /*The delete function removes a directory created by tempDirectory and everything in it*/
+    public static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static String words(SplittableRandom random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(i > 0 ? " " : "").append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
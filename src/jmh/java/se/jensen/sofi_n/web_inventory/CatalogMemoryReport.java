@@ -0,0 +1,56 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/// The CatalogMemoryReport class loads generated catalogs into an Inventory and prints how much memory they take:
+/// the heap in use after garbage collection, the native memory of the product store, and the bytes of names and
+/// descriptions the products hold next to the bytes the store actually keeps once equal strings are shared. It is
+/// run once per catalog instead of through JMH, since it measures a footprint and not a rate. The figures depend on
+/// the JVM and its heap settings, so those are printed with them.
+///
+/// Run:  java -cp target/benchmarks.jar se.jensen.sofi_n.web_inventory.CatalogMemoryReport [size]
+///
+public class CatalogMemoryReport {
+    /// Attributes
+    private static final int DEFAULT_SIZE = 1_000_000;
+    private static final int MB = 1 << 20;
+
+    /*The main function takes an optional catalog size and reports the memory of the plain and the variant catalog
+    * of that size*/
+    public static void main(String[] args) throws IOException {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+        System.out.printf("Java %s, %s %s, max heap %d MB%n", Runtime.version(), System.getProperty("java.vm.vendor"),
+                System.getProperty("java.vm.name"), Runtime.getRuntime().maxMemory() / MB);
+        System.out.printf("%-10s %10s %10s %10s %12s %12s%n", "catalog", "products", "heap MB", "native MB",
+                "strings MB", "stored MB");
+        report("plain", CatalogGenerator.products(size));
+        report("variants", CatalogGenerator.variantProducts(size));
+    }
+
+    /*The report function writes the passed products to files, loads them into a new Inventory and prints one row
+    * of measurements*/
+    private static void report(String catalog, List<Product> products) throws IOException {
+        File directory = CatalogGenerator.tempDirectory();
+        try {
+            File[] files = CatalogGenerator.writeFiles(products, directory);
+            products = null; //only the loaded copy is measured
+            Inventory inventory = new Inventory(new SilentUI(), files[0].getPath(), files[1].getPath());
+            ProductStore store = inventory.getProductStore();
+            System.out.printf("%-10s %10d %10d %10d %12d %12d%n", catalog, store.size(), usedHeap() / MB,
+                    store.nativeBytes() / MB, store.stringBytes() / MB, store.storedStringBytes() / MB);
+            inventory.close();
+        } finally {
+            CatalogGenerator.delete(directory);
+        }
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc(); //a few rounds, so objects freed by finalization and reference processing are gone too
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,102 @@
+package se.jensen.sofi_n.web_inventory;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+/// The ChangeFeedBenchmark class measures how many changes per second the ChangeFeed delivers to one and to several
+/// subscribers. Each invocation publishes a batch of stock changes and waits until every subscriber has received
+/// them, so the score is delivered changes and not just buffered ones. The subscribers request changes in chunks of
+/// half their buffer, like a subscriber keeping up would.
+///
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChangeFeedBenchmark {
+    /// Attributes
+    private static final int BATCH = 1024; //changes published per invocation
+    private static final int BUFFER_SIZE = 4 * BATCH;
+
+    @Param({"1", "4"})
+    public int subscribers;
+
+    private ExecutorService executor;
+    private ChangeFeed feed;
+    private CountingSubscriber[] counters;
+    private InventoryChange[] changes; //made up front, so only publishing and delivering is measured
+    private long published;
+
+    /// counts the changes it receives and requests more each time half its buffer has been received
+    private static final class CountingSubscriber implements Flow.Subscriber<InventoryChange> {
+        private Flow.Subscription subscription;
+        private volatile long received; //only written by the delivering thread
+        private long unrequested;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(BUFFER_SIZE);
+        }
+
+        @Override
+        public void onNext(InventoryChange change) {
+            received++;
+            if (++unrequested == BUFFER_SIZE / 2) {
+                unrequested = 0;
+                subscription.request(BUFFER_SIZE / 2);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            throw new IllegalStateException("Benchmark subscriber failed", throwable);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        feed = new ChangeFeed(executor, BUFFER_SIZE);
+        counters = new CountingSubscriber[subscribers];
+        for (int i = 0; i < subscribers; i++) {
+            counters[i] = new CountingSubscriber();
+            feed.subscribe(counters[i]);
+        }
+        changes = new InventoryChange[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            changes[i] = new InventoryChange.StockChanged(new Accessory(10000 + i), 100, 100 - (i & 7), 1);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        feed.close();
+        executor.shutdown();
+    }
+
+    /// Benchmarks
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long publishAndDeliver() {
+        for (InventoryChange change : changes) {
+            feed.publish(change);
+        }
+        published += BATCH;
+        for (CountingSubscriber counter : counters) {
+            while (counter.received < published) {
+                Thread.yield(); //let the delivering threads run, even on few cores
+            }
+        }
+        return published;
+    }
+}
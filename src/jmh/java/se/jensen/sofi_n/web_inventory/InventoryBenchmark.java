@@ -0,0 +1,81 @@
+package se.jensen.sofi_n.web_inventory;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/// The InventoryBenchmark class measures the Inventory's lookups and file handling on generated catalogs from a
+/// thousand to a million products. Generating article IDs and listing are in ArticleIdBenchmark and ListingBenchmark,
+/// since they need their own setup. Each catalog is written to a temporary directory and loaded by a real Inventory,
+/// the same way it happens at startup.
+///
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InventoryBenchmark {
+    /// Attributes
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private File directory;
+    private File productFile;
+    private SilentUI ui;
+    private Inventory inventory;
+    private List<Product> snapshot;
+    private int[] lookupIDs; //mix of existing and missing IDs, walked in order
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = CatalogGenerator.tempDirectory();
+        File[] files = CatalogGenerator.writeFiles(size, directory);
+        productFile = files[0];
+        ui = new SilentUI();
+        inventory = new Inventory(ui, files[0].getPath(), files[1].getPath());
+        snapshot = new ArrayList<>(CatalogGenerator.products(size));
+        SplittableRandom random = new SplittableRandom(1);
+        lookupIDs = new int[1 << 16];
+        for (int i = 0; i < lookupIDs.length; i++) {
+            lookupIDs[i] = 10000 + random.nextInt(size + size / 100); //about 1% misses on gaps
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        inventory.close(); //stops its threads before the files are deleted
+        CatalogGenerator.delete(directory);
+    }
+
+    /// Benchmarks
+    @Benchmark
+    public Product searchProduct() {
+        int id = lookupIDs[next++ & (lookupIDs.length - 1)];
+        return inventory.searchProduct(id);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public void loadProductsFromFile() {
+        inventory.loadProductsFromFile(productFile.getPath());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public boolean updateProductFile() {
+        return inventory.updateProductFile(new File(directory, "written.txt").getPath(), snapshot);
+    }
+}
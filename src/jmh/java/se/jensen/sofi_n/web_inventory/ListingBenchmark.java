@@ -0,0 +1,87 @@
+package se.jensen.sofi_n.web_inventory;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/// The ListingBenchmark class measures the product listing: showing the first page the way the List products button
+/// does, reading a page from the middle of the catalog, and streaming the whole listing to a sink that only counts
+/// the characters, so the time and allocation are those of the Inventory and not of the sink.
+///
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListingBenchmark {
+    /// Attributes
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private File directory;
+    private SilentUI ui;
+    private Inventory inventory;
+
+    /// Counting sink
+    private static class CountingSink implements Appendable {
+        long length;
+
+        @Override
+        public Appendable append(CharSequence text) {
+            length += text.length();
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence text, int start, int end) {
+            length += end - start;
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            length++;
+            return this;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = CatalogGenerator.tempDirectory();
+        File[] files = CatalogGenerator.writeFiles(size, directory);
+        ui = new SilentUI();
+        inventory = new Inventory(ui, files[0].getPath(), files[1].getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        inventory.close(); //stops its threads before the files are deleted
+        CatalogGenerator.delete(directory);
+    }
+
+    /// Benchmarks
+    @Benchmark
+    public ProductPage listProducts() {
+        inventory.listProducts();
+        return ui.lastPage();
+    }
+
+    @Benchmark
+    public ProductPage getProductPage() {
+        return inventory.getProductPage(size / 2, 50);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3)
+    @Measurement(iterations = 10)
+    public long writeProductListing() throws IOException {
+        CountingSink sink = new CountingSink();
+        inventory.writeProductListing(sink);
+        return sink.length;
+    }
+}
@@ -0,0 +1,63 @@
+package se.jensen.sofi_n.web_inventory;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/// The LoaderBenchmark class compares the parallel memory mapped ProductFileLoader with reading the products file
+/// line by line on one thread, which is how the Inventory loaded the file before.
+///
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LoaderBenchmark {
+    /// Attributes
+    @Param({"100000", "1000000", "3000000"})
+    public int size;
+
+    private static final Consumer<String> IGNORE_ERRORS = error -> {};
+    private File directory;
+    private File productFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = CatalogGenerator.tempDirectory();
+        productFile = CatalogGenerator.writeFiles(size, directory)[0];
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CatalogGenerator.delete(directory);
+    }
+
+    /// Benchmarks
+    @Benchmark
+    public List<Product> parallelLoader() throws IOException {
+        return ProductFileLoader.load(productFile.getPath(), IGNORE_ERRORS);
+    }
+
+    @Benchmark
+    public List<Product> sequentialReader() throws IOException {
+        List<Product> products = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new FileReader(productFile))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                Product product = Product.deserialize(line, IGNORE_ERRORS);
+                if (product != null) {
+                    products.add(product);
+                }
+            }
+        }
+        return products;
+    }
+}
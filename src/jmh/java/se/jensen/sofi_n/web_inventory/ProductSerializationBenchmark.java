@@ -0,0 +1,78 @@
+package se.jensen.sofi_n.web_inventory;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/// The ProductSerializationBenchmark class measures turning products into lines of the products and nutrient table
+/// files and back, one line per operation, walking through a generated catalog so every category is included.
+///
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductSerializationBenchmark {
+    /// Attributes
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    private static final Consumer<String> IGNORE_ERRORS = error -> {};
+    private Product[] products;
+    private String[] productLines;
+    private String[] nutrientLines;
+    private ProductIndex index;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Product> catalog = CatalogGenerator.products(size);
+        products = catalog.toArray(new Product[0]);
+        productLines = new String[products.length];
+        index = new ProductIndex();
+        int foodProducts = 0;
+        for (int i = 0; i < products.length; i++) {
+            productLines[i] = products[i].serialize();
+            index.put(products[i]);
+            if (products[i] instanceof FoodProduct) {
+                foodProducts++;
+            }
+        }
+        nutrientLines = new String[foodProducts];
+        int n = 0;
+        for (Product product : products) {
+            if (product instanceof FoodProduct) {
+                nutrientLines[n++] = ((FoodProduct) product).serializeNutrientValues();
+            }
+        }
+    }
+
+    /// Benchmarks
+    @Benchmark
+    public String serialize() {
+        return products[nextIndex(products.length)].serialize();
+    }
+
+    @Benchmark
+    public Product deserialize() {
+        return Product.deserialize(productLines[nextIndex(productLines.length)], IGNORE_ERRORS);
+    }
+
+    /* Looks the articleID up in an index of the whole catalog and sets the table on the product, without the check
+    * for duplicate rows since the same lines are read over and over*/
+    @Benchmark
+    public int deserializeNutrientValues() {
+        return FoodProduct.deserializeNutrientValues(nutrientLines[nextIndex(nutrientLines.length)], index, null,
+                IGNORE_ERRORS);
+    }
+
+    private int nextIndex(int length) {
+        if (next >= length) {
+            next = 0;
+        }
+        return next++;
+    }
+}
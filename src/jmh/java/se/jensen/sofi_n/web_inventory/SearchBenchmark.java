@@ -0,0 +1,78 @@
+package se.jensen.sofi_n.web_inventory;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/// The SearchBenchmark class measures word search over the generated catalog: a single word prefix, two words found
+/// in many names, and a query with several common words that few names have together, which has to go through every
+/// tier before the results are full. The first search of a newly loaded inventory, which builds the index, is measured
+/// on its own.
+///
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+    /// Attributes
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"pro", "whey vanilla", "protein vanilla chocolate shaker"})
+    public String query;
+
+    private File directory;
+    private File[] files;
+    private Inventory inventory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = CatalogGenerator.tempDirectory();
+        files = CatalogGenerator.writeFiles(size, directory);
+        inventory = new Inventory(new SilentUI(), files[0].getPath(), files[1].getPath());
+        inventory.searchProducts(query, 1); //builds the index
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        inventory.close(); //stops its threads before the files are deleted
+        CatalogGenerator.delete(directory);
+    }
+
+    /// Fresh inventory
+    /// loaded again before every first search, outside the measured time
+    @State(Scope.Thread)
+    public static class FreshInventory {
+        Inventory inventory;
+
+        @Setup(Level.Invocation)
+        public void load(SearchBenchmark benchmark) {
+            inventory = new Inventory(new SilentUI(), benchmark.files[0].getPath(), benchmark.files[1].getPath());
+        }
+
+        @TearDown(Level.Invocation)
+        public void close() {
+            inventory.close();
+        }
+    }
+
+    /// Benchmarks
+    @Benchmark
+    public List<Product> searchProducts() {
+        return inventory.searchProducts(query, 20);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public List<Product> firstSearch(FreshInventory fresh) {
+        return fresh.inventory.searchProducts(query, 20);
+    }
+}
@@ -0,0 +1,56 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/// The SilentUI class is a UI implementation for the benchmarks that never prompts and doesn't display anything.
+/// The last shown text and page are kept so the benchmarks can hand them to JMH, otherwise building them could be
+/// optimized away.
+///
+public class SilentUI implements UI {
+    /// Attributes
+    private String lastText;
+    private ProductPage lastPage;
+    private int errors;
+
+    /// Getters
+    public String lastText() {return lastText;}
+
+    public ProductPage lastPage() {return lastPage;}
+
+    public int errors() {return errors;}
+
+    /// Override functions from UI interface
+    @Override
+    public void promptInput(String prompt, Consumer<String> onResult) {}
+
+    @Override
+    public void showError(String error) {
+        errors++;
+    }
+
+    @Override
+    public void showTextWithTitle(String title, String message) {
+        lastText = message;
+    }
+
+    @Override
+    public void showProductPage(ProductPage page, Consumer<Integer> onPageRequested) {
+        lastPage = page;
+    }
+
+    @Override
+    public void showSearchResults(String query, List<Product> results, Consumer<Integer> onProductSelected) {}
+
+    @Override
+    public void promptProductDetails(int articleID, Consumer<ProductInputDetails> onResult) {}
+
+    @Override
+    public void showCategorySelection(Consumer<String> onCategorySelected) {}
+
+    @Override
+    public void promptNutrientInfo(FoodProduct foodProduct, Consumer<NutrientTableValues> onResult) {}
+
+    @Override
+    public void displayProductInformation(Product product) {}
+}
@@ -0,0 +1,87 @@
+package se.jensen.sofi_n.web_inventory;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/// The StockAdjustmentBenchmark class compares applying a batch of stock adjustments with adjustStock against
+/// applying the same adjustments one at a time through the increase and decrease stock flows, which check,
+/// journal and report each change on its own. Each invocation adjusts the stock of batchSize different products,
+/// raising it by one on every other invocation and lowering it by one on the rest, so the stock stays the same.
+///
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StockAdjustmentBenchmark {
+    /// Attributes
+    private static final int SIZE = 100_000; //products in the catalog
+
+    @Param({"10", "100", "1000"})
+    public int batchSize;
+
+    private File directory;
+    private Inventory inventory;
+    private QuantityUI ui;
+    private List<StockAdjustment> increases;
+    private List<StockAdjustment> decreases;
+    private boolean increasing; //flipped before each invocation, so the first one increases
+
+    /// Quantity UI
+    /// answers the quantity prompt of the stock flows with one
+    private static class QuantityUI extends SilentUI {
+        @Override
+        public void promptInput(String prompt, Consumer<String> onResult) {
+            onResult.accept("1");
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = CatalogGenerator.tempDirectory();
+        File[] files = CatalogGenerator.writeFiles(SIZE, directory);
+        ui = new QuantityUI();
+        inventory = new Inventory(ui, files[0].getPath(), files[1].getPath());
+        ProductTree products = inventory.getCatalogSnapshot().products();
+        increases = new ArrayList<>(batchSize);
+        decreases = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            int id = products.get((int) ((long) i * products.size() / batchSize)).getArticleID(); //spread out
+            increases.add(new StockAdjustment(id, 1));
+            decreases.add(new StockAdjustment(id, -1));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        inventory.close();
+        CatalogGenerator.delete(directory);
+    }
+
+    /// Benchmarks
+    @Benchmark
+    public boolean adjustStock() {
+        increasing = !increasing;
+        return inventory.adjustStock(increasing ? increases : decreases);
+    }
+
+    @Benchmark
+    public int adjustOneAtATime() {
+        increasing = !increasing;
+        for (StockAdjustment adjustment : increasing ? increases : decreases) {
+            if (adjustment.delta() > 0) {
+                inventory.userIncreaseStock(adjustment.articleID(), () -> {});
+            } else {
+                inventory.userDecreaseStock(adjustment.articleID(), () -> {});
+            }
+        }
+        return ui.errors();
+    }
+}
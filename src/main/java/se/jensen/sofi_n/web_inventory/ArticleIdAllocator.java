@@ -0,0 +1,82 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.util.BitSet;
+
+/// The ArticleIdAllocator class keeps track of which articleIDs are taken, using one bit per ID from the lowest
+/// allowed ID and up. It is filled once when the products are loaded and then updated as products are added and
+/// removed, so handing out the lowest free ID doesn't require searching the product list.
+///
+/// All functions are synchronized, so two add flows running at the same time can never be handed the same ID.
+///
+public class ArticleIdAllocator {
+    /// Attributes
+    private final int LOWEST_ID;
+    private final BitSet usedIDs = new BitSet(); //bit n represents the ID LOWEST_ID + n
+    private int lowestFree = 0; //no free bit exists below this index
+
+    /// Constructor
+    public ArticleIdAllocator(int lowestID) {
+        this.LOWEST_ID = lowestID;
+    }
+
+    /*The allocate function finds the lowest free ID, marks it as taken and returns it. The search starts from the
+    * lowest known gap, so each call only passes over IDs that were taken since the last gap was filled.*/
+    public synchronized int allocate() {
+        int index = usedIDs.nextClearBit(lowestFree);
+        if (index > Integer.MAX_VALUE - LOWEST_ID) {
+            throw new IllegalStateException("No article IDs left");
+        }
+        usedIDs.set(index);
+        lowestFree = index + 1;
+        return LOWEST_ID + index;
+    }
+
+    /*The lowestFree function returns the lowest free ID without taking it, used to show the ID a new product will
+    * most likely get. The gap found is kept, so the IDs marked by a load are only passed over once.*/
+    public synchronized int lowestFree() {
+        lowestFree = usedIDs.nextClearBit(lowestFree);
+        return LOWEST_ID + lowestFree;
+    }
+
+    /*The markUsed function takes an integer ID and marks it as taken, used when loading existing products*/
+    public synchronized void markUsed(int id) {
+        if (id >= LOWEST_ID) {
+            take(id - LOWEST_ID);
+        }
+    }
+
+    /*The tryMarkUsed function takes an integer ID and marks it as taken if it is free. Returns false if the ID was
+    * already taken or is below the lowest allowed ID.*/
+    public synchronized boolean tryMarkUsed(int id) {
+        if (id < LOWEST_ID || usedIDs.get(id - LOWEST_ID)) {
+            return false;
+        }
+        take(id - LOWEST_ID);
+        return true;
+    }
+
+    /*The take function sets the bit of an ID and moves the lowest gap past it if it was the gap*/
+    private void take(int index) {
+        usedIDs.set(index);
+        if (index == lowestFree) {
+            lowestFree = index + 1;
+        }
+    }
+
+    /*The release function takes an integer ID and marks it as free again, used when a product is removed*/
+    public synchronized void release(int id) {
+        if (id >= LOWEST_ID) {
+            int index = id - LOWEST_ID;
+            usedIDs.clear(index);
+            if (index < lowestFree) {
+                lowestFree = index; //new lowest gap
+            }
+        }
+    }
+
+    /*The clear function marks all IDs as free*/
+    public synchronized void clear() {
+        usedIDs.clear();
+        lowestFree = 0;
+    }
+}
@@ -0,0 +1,422 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/// The CatalogImporter class reads a supplier catalog and turns its rows into products, for the Inventory class's
+/// importCatalog function. The catalog is streamed through four stages, the first three on threads of their own and
+/// the last on the calling thread:
+///   read      lines are read from the catalog in batches
+///   parse     each line is split into fields, at semicolons or at commas with CSV quoting
+///   validate  the fields are checked and a product is created, with its nutrient table for food products
+///   insert    the ProductSink passed by the Inventory gives the product an articleID and keeps it
+/// Batches are passed between the stages through small bounded queues, so the whole catalog is never held as lines
+/// or fields, and a slow stage holds up reading instead of letting the queues grow.
+///
+/// A catalog with a header row names its columns, in any order: category, articleID, name, price, description,
+/// stock, and for food products kcal, fat, carbs, protein and for energy drinks caffeine. Only category, name and
+/// price are required for every row. Without a header the rows are read like the products file, optionally followed
+/// by the nutrient values: Accessory;10000;name;99.0;description;0 or EnergyDrink;;name;25.0;description;0;1;2;3;4;80
+/// Categories can be written as class names or as shown in the menu. A row without an articleID is given a free one.
+///
+/// Rejected rows don't stop the import, the reason is kept with the line number and returned in one ImportReport.
+/// Quoted fields can't span lines.
+///
+public class CatalogImporter {
+    /// Attributes
+    private static final int BATCH_SIZE = 1024; //lines passed between stages at a time
+    private static final int QUEUE_CAPACITY = 4; //batches waiting between two stages
+    private static final int MAX_REPORTED_ERRORS = 100; //rejected rows beyond this are only counted
+    private static final Batch END = new Batch(0); //passed on after the last batch
+    private static final String[] COLUMNS = {"category", "articleid", "name", "price", "description", "stock",
+            "kcal", "fat", "carbs", "protein", "caffeine"};
+    private static final int CATEGORY = 0; //positions in COLUMNS
+    private static final int ARTICLE_ID = 1;
+    private static final int NAME = 2;
+    private static final int PRICE = 3;
+    private static final int DESCRIPTION = 4;
+    private static final int STOCK = 5;
+    private static final int KCAL = 6; //first of the nutrient values
+    private static final Map<String, Integer> CATEGORIES = new HashMap<>(); //lower case category or class name
+    private final BufferedReader in;
+    private final String source;
+    private final ProductSink sink;
+    private char separator;
+    private int[] columns; //field position of each of COLUMNS, -1 if missing
+    private int fieldCount; //fields every row must have, -1 if the nutrient values are optional
+    private int rows;
+    private int rejected;
+    private final List<String> errors = new ArrayList<>();
+
+    static {
+        String[][] names = {{"accessory", "accessories"}, {"energydrink", "energy drinks"},
+                {"proteinbar", "protein bars"}, {"proteinpowder", "protein powders"}};
+        for (int i = 0; i < names.length; i++) {
+            for (String name : names[i]) {
+                CATEGORIES.put(name, i);
+            }
+        }
+    }
+
+    /// Product sink
+    /// the insert stage, gives a product without an articleID (0) a free one or takes the one it has, and keeps the
+    /// product. Returns null, or the reason the product was rejected.
+    public interface ProductSink {
+        String accept(Product product);
+    }
+
+    /// Batch
+    /// consecutive lines of the catalog, filled in further by each stage
+    private static class Batch {
+        final int firstLine;
+        final List<String> lines = new ArrayList<>(BATCH_SIZE);
+        final List<String[]> fields = new ArrayList<>(BATCH_SIZE); //null for blank or unparsable lines
+        final List<Product> products = new ArrayList<>(BATCH_SIZE); //null for rejected rows
+        final List<LineError> errors = new ArrayList<>();
+
+        Batch(int firstLine) {
+            this.firstLine = firstLine;
+        }
+    }
+
+    private record LineError(int line, String message) {}
+
+    /// Constructor
+    /*The constructor takes the catalog, a name for it to use in the report, and the sink to pass valid products to*/
+    public CatalogImporter(BufferedReader in, String source, ProductSink sink) {
+        this.in = in;
+        this.source = source;
+        this.sink = sink;
+    }
+
+    /*The run function reads the header, streams the rest of the catalog through the stages and returns the report.
+    * The sink is called on the calling thread. If the catalog can't be read to the end, the report holds the reason,
+    * and the caller should drop what the sink kept.*/
+    public ImportReport run() {
+        ExecutorService stages = Executors.newFixedThreadPool(3, runnable -> {
+            Thread thread = new Thread(runnable, "catalog-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        BlockingQueue<Batch> toParse = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Batch> toValidate = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Batch> toInsert = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        try {
+            Batch first = readHeader();
+            Future<?> reading = stages.submit(() -> {
+                read(first, toParse);
+                return null;
+            });
+            Future<?> parsing = stages.submit(() -> {
+                pass(toParse, toValidate, this::parse);
+                return null;
+            });
+            Future<?> validating = stages.submit(() -> {
+                pass(toValidate, toInsert, this::validate);
+                return null;
+            });
+            for (Batch batch = toInsert.take(); batch != END; batch = toInsert.take()) {
+                insert(batch);
+            }
+            //a failed stage ends the stages after it early, check them from the last
+            validating.get();
+            parsing.get();
+            reading.get();
+        } catch (IOException | IllegalArgumentException e) { //or a header that can't be read
+            return failed(e.getMessage());
+        } catch (ExecutionException e) {
+            return failed(String.valueOf(e.getCause().getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failed("interrupted");
+        } finally {
+            stages.shutdownNow(); //stops the other stages if the insert stage failed
+        }
+        return new ImportReport(source, rows, rows - rejected, rejected, List.copyOf(errors), null);
+    }
+
+    private ImportReport failed(String reason) {
+        return new ImportReport(source, rows, 0, rows, List.of(), reason);
+    }
+
+    /// Stages
+    /*The readHeader function reads the first line that isn't blank, takes the separator from it and finds the
+    * columns if it is a header. Returns the first batch, holding that line if it is a product row. Throws an
+    * IllegalArgumentException if the header has a quote that isn't closed.*/
+    private Batch readHeader() throws IOException {
+        int lineNumber = 0;
+        String line;
+        do {
+            line = in.readLine();
+            lineNumber++;
+        } while (line != null && line.isBlank());
+        if (line == null) {
+            separator = ';';
+            columns = new int[0];
+            return new Batch(lineNumber);
+        }
+        if (line.charAt(0) == '\uFEFF') {
+            line = line.substring(1); //byte order mark
+        }
+        separator = line.indexOf(';') >= 0 ? ';' : ',';
+        String[] header = split(line);
+        if (header == null) { //a quote isn't closed, a header if it names the name column
+            for (String field : line.split(String.valueOf(separator))) {
+                if (column(field.replace("\"", "")) == NAME) {
+                    throw new IllegalArgumentException("Line " + lineNumber + ": Missing closing quote");
+                }
+            }
+            header = new String[0]; //a product row, rejected by the parse stage
+        }
+        columns = new int[COLUMNS.length];
+        Arrays.fill(columns, -1);
+        for (int i = 0; i < header.length; i++) {
+            int index = column(header[i]);
+            if (index >= 0 && columns[index] < 0) {
+                columns[index] = i;
+            }
+        }
+        if (columns[NAME] >= 0) {
+            fieldCount = header.length;
+            return new Batch(lineNumber + 1);
+        }
+        //no header, the columns of the products file followed by the nutrient values
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = i;
+        }
+        fieldCount = -1;
+        Batch first = new Batch(lineNumber);
+        first.lines.add(line);
+        return first;
+    }
+
+    /*The column function takes a field of a header and returns the position in COLUMNS of the column it names, or
+    * -1 if it isn't one*/
+    private static int column(String field) {
+        String column = field.trim().toLowerCase(Locale.ROOT).replace(" ", "").replace("_", "");
+        column = switch (column) {
+            case "class", "type" -> "category";
+            case "id" -> "articleid";
+            case "quantity" -> "stock";
+            default -> column;
+        };
+        return Arrays.asList(COLUMNS).indexOf(column);
+    }
+
+    /*The read function fills batches with lines and passes them to the parse stage, the first batch already holding
+    * any product row read with the header*/
+    private void read(Batch first, BlockingQueue<Batch> out) throws IOException, InterruptedException {
+        try {
+            Batch batch = first;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (batch.lines.size() == BATCH_SIZE) {
+                    out.put(batch);
+                    batch = new Batch(batch.firstLine + BATCH_SIZE);
+                }
+                batch.lines.add(line);
+            }
+            out.put(batch);
+        } finally {
+            out.put(END); //also after a read error, so the stages after this one finish
+        }
+    }
+
+    /// Stage action
+    /// the work of a stage on one batch
+    private interface StageAction {
+        void apply(Batch batch);
+    }
+
+    /*The pass function applies a stage's action to every batch from the queue before it and passes the batch on*/
+    private static void pass(BlockingQueue<Batch> in, BlockingQueue<Batch> out, StageAction action)
+            throws InterruptedException {
+        try {
+            for (Batch batch = in.take(); batch != END; batch = in.take()) {
+                action.apply(batch);
+                out.put(batch);
+            }
+        } finally {
+            out.put(END); //also after a failure, so the stages after this one finish
+        }
+    }
+
+    /*The parse function splits every line of the batch into fields*/
+    private void parse(Batch batch) {
+        for (int i = 0; i < batch.lines.size(); i++) {
+            String line = batch.lines.get(i);
+            String[] fields = null;
+            if (!line.isBlank()) {
+                fields = split(line);
+                if (fields == null) {
+                    batch.errors.add(new LineError(batch.firstLine + i, "Missing closing quote"));
+                }
+            }
+            batch.fields.add(fields);
+        }
+    }
+
+    /*The validate function creates a product from the fields of every row of the batch, or notes why it can't*/
+    private void validate(Batch batch) {
+        for (int i = 0; i < batch.fields.size(); i++) {
+            String[] fields = batch.fields.get(i);
+            Product product = null;
+            if (fields != null) {
+                try {
+                    product = createProduct(fields);
+                } catch (IllegalArgumentException e) {
+                    batch.errors.add(new LineError(batch.firstLine + i, e.getMessage()));
+                }
+            }
+            batch.products.add(product);
+        }
+    }
+
+    /*The insert function runs on the calling thread, passes every valid product to the sink and counts the rows and
+    * the rejected ones. The batch's errors are reported in line order.*/
+    private void insert(Batch batch) {
+        for (int i = 0; i < batch.lines.size(); i++) {
+            if (batch.lines.get(i).isBlank()) {
+                continue;
+            }
+            rows++;
+            Product product = batch.products.get(i);
+            if (product == null) {
+                rejected++; //the reason is already in the batch's errors
+                continue;
+            }
+            String error = sink.accept(product);
+            if (error != null) {
+                batch.errors.add(new LineError(batch.firstLine + i, error));
+                rejected++;
+            }
+        }
+        batch.errors.sort(Comparator.comparingInt(LineError::line));
+        for (LineError error : batch.errors) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("Line " + error.line() + ": " + error.message());
+            }
+        }
+    }
+
+    /// Rows
+    /*The createProduct function checks the fields of one row and returns the product they describe, with articleID
+    * 0 if the row has none. Throws IllegalArgumentException with the reason if the row isn't valid.*/
+    private Product createProduct(String[] fields) {
+        if (fieldCount >= 0 ? fields.length != fieldCount
+                : fields.length != KCAL && fields.length != KCAL + 4 && fields.length != KCAL + 5) {
+            throw new IllegalArgumentException("Wrong number of fields: " + fields.length);
+        }
+        String category = field(fields, CATEGORY);
+        Integer categoryIndex = CATEGORIES.get(category.toLowerCase(Locale.ROOT));
+        if (categoryIndex == null) {
+            throw new IllegalArgumentException("Unknown category: " + category);
+        }
+        String idField = field(fields, ARTICLE_ID);
+        int articleID = idField.isEmpty() ? 0 : parseInt(idField, "articleID");
+        if (idField.length() > 0 && articleID <= 0) {
+            throw new IllegalArgumentException("Invalid articleID: " + idField);
+        }
+        String name = field(fields, NAME);
+        String description = field(fields, DESCRIPTION);
+        String error = new ProductInputDetails(name, field(fields, PRICE), description).validate();
+        if (error != null) { //the same checks as the add form
+            throw new IllegalArgumentException(error);
+        }
+        double price = Double.parseDouble(field(fields, PRICE));
+        String stockField = field(fields, STOCK);
+        int stock = stockField.isEmpty() ? 0 : parseInt(stockField, "stock");
+
+        Product product = switch (categoryIndex) {
+            case 0 -> new Accessory(articleID);
+            case 1 -> new EnergyDrink(articleID);
+            case 2 -> new ProteinBar(articleID);
+            default -> new ProteinPowder(articleID);
+        };
+        product.setName(name);
+        product.setPrice(price);
+        product.setDescription(description);
+        product.setStock(stock);
+        if (product instanceof FoodProduct foodProduct) {
+            int[] nutrients = new int[foodProduct.nutrientSchema().size()];
+            for (int i = 0; i < nutrients.length; i++) {
+                String value = field(fields, KCAL + i);
+                if (value.isEmpty()) {
+                    throw new IllegalArgumentException("Missing " + COLUMNS[KCAL + i] + " for " + product.category());
+                }
+                nutrients[i] = parseInt(value, COLUMNS[KCAL + i]);
+            }
+            foodProduct.setNutrientValues(nutrients);
+        }
+        return product;
+    }
+
+    /*The field function returns the trimmed field of a column, or an empty String if the row doesn't have it*/
+    private String field(String[] fields, int column) {
+        int position = columns[column];
+        return position >= 0 && position < fields.length ? fields[position].trim() : "";
+    }
+
+    private static int parseInt(String value, String label) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            //reported below
+        }
+        throw new IllegalArgumentException("Invalid " + label + ": " + value);
+    }
+
+    /*The split function splits a line at the separator. A field starting with a quote runs to the closing quote, and
+    * two quotes inside it stand for one. Returns null if a quote isn't closed.*/
+    private String[] split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            field.setLength(0);
+            if (i < line.length() && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= line.length()) {
+                        return null;
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < line.length() && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                }
+            }
+            while (i < line.length() && line.charAt(i) != separator) {
+                field.append(line.charAt(i++));
+            }
+            fields.add(field.toString());
+            if (i >= line.length()) {
+                return fields.toArray(new String[0]);
+            }
+            i++; //past the separator
+        }
+    }
+}
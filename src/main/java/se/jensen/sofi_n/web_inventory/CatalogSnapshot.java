@@ -0,0 +1,65 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.util.List;
+import java.util.Map;
+
+/// The CatalogSnapshot record is one version of the Inventory's catalog: every product in the order they were added
+/// and the same products per category. It is immutable, so listings, pages, exports and reports read from one
+/// snapshot all see the same catalog, however long they take and whatever is added or removed meanwhile.
+///
+/// The Inventory publishes a new snapshot with every product added or removed, built from the previous one with
+/// with and without, which share all unchanged parts of the trees. Readers just take the latest one, without
+/// locking, so they never wait for writers and writers never wait for them. Stock isn't part of a snapshot: it is
+/// read from the products, which always show their current stock.
+///
+public record CatalogSnapshot(long version, ProductTree products, CategoryIndex categories) {
+    public static final CatalogSnapshot EMPTY = new CatalogSnapshot(0, ProductTree.EMPTY, CategoryIndex.EMPTY);
+
+    /// Updating
+    /*The with function returns the next version of the catalog, with the product added*/
+    public CatalogSnapshot with(Product product) {
+        return new CatalogSnapshot(version + 1, products.with(product), categories.with(product));
+    }
+
+    /*The without function returns the next version of the catalog, without the product*/
+    public CatalogSnapshot without(Product product) {
+        return new CatalogSnapshot(version + 1, products.without(product), categories.without(product));
+    }
+
+    /*The replacedBy function takes products in catalog order and returns the next version of the catalog holding
+    * just them, used when the whole catalog is loaded. The trees are built in one pass.*/
+    public CatalogSnapshot replacedBy(List<Product> loaded) {
+        return new CatalogSnapshot(version + 1, ProductTree.of(loaded), CategoryIndex.of(loaded));
+    }
+
+    /// Reading
+    public int size() {
+        return products.size();
+    }
+
+    /*The page function takes the position of the first product and the largest number of products to return, and
+    * returns that page of the catalog. A position past the end gives the last page.*/
+    public ProductPage page(int offset, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        int total = products.size();
+        int start = offset < total ? Math.max(0, offset) : Math.max(0, total - pageSize);
+        return new ProductPage(products.range(start, pageSize), start, pageSize, total);
+    }
+
+    /*The categoryPage function works like page, but pages through the products of one category*/
+    public ProductPage categoryPage(String category, int offset, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        int total = categories.count(category);
+        int start = offset < total ? Math.max(0, offset) : Math.max(0, total - pageSize);
+        return new ProductPage(categories.products(category, start, pageSize), start, pageSize, total);
+    }
+
+    /*The categoryCounts function returns the number of products in each category*/
+    public Map<String, Integer> categoryCounts() {
+        return categories.counts();
+    }
+}
@@ -0,0 +1,117 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/// The CategoryIndex class keeps the products of each category in a tree of their own, so listing or counting one
+/// category doesn't require walking the whole product list and checking the class of every product. The trees keep
+/// the order the products were added in, and adding or removing a product only touches the tree of its category.
+///
+/// Food products aren't stored a second time for the FoodProduct super-category. The categories whose products are
+/// food products are remembered, and the food products are read from their trees.
+///
+/// The index is immutable, adding or removing a product returns a new index sharing the other categories and the
+/// unchanged parts of the product's category with this one. It is part of the CatalogSnapshot the Inventory
+/// publishes, so it can be read from any thread without locking.
+///
+public final class CategoryIndex {
+    /// Attributes
+    public static final CategoryIndex EMPTY = new CategoryIndex(Map.of(), Set.of());
+    private final Map<String, ProductTree> categories; //category name to its products, in the order first added
+    private final Set<String> foodCategories;
+
+    /// Constructor
+    private CategoryIndex(Map<String, ProductTree> categories, Set<String> foodCategories) {
+        this.categories = categories;
+        this.foodCategories = foodCategories;
+    }
+
+    /*The of function takes products in catalog order and returns an index of them, building each category's tree
+    * in one pass*/
+    public static CategoryIndex of(List<Product> products) {
+        Map<String, List<Product>> grouped = new LinkedHashMap<>();
+        Set<String> foodCategories = new LinkedHashSet<>();
+        for (Product product : products) {
+            grouped.computeIfAbsent(product.category(), name -> new ArrayList<>()).add(product);
+            if (product instanceof FoodProduct) {
+                foodCategories.add(product.category());
+            }
+        }
+        Map<String, ProductTree> categories = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Product>> category : grouped.entrySet()) {
+            categories.put(category.getKey(), ProductTree.of(category.getValue()));
+        }
+        return new CategoryIndex(categories, foodCategories);
+    }
+
+    /// Updating
+    /*The with function returns an index with the product added to its category*/
+    public CategoryIndex with(Product product) {
+        String category = product.category();
+        Map<String, ProductTree> updated = new LinkedHashMap<>(categories); //a handful of categories
+        updated.put(category, categories.getOrDefault(category, ProductTree.EMPTY).with(product));
+        Set<String> food = foodCategories;
+        if (product instanceof FoodProduct && !food.contains(category)) {
+            food = new LinkedHashSet<>(food);
+            food.add(category);
+        }
+        return new CategoryIndex(updated, food);
+    }
+
+    /*The without function returns an index with the product removed from its category*/
+    public CategoryIndex without(Product product) {
+        ProductTree category = categories.get(product.category());
+        if (category == null) {
+            return this;
+        }
+        Map<String, ProductTree> updated = new LinkedHashMap<>(categories);
+        updated.put(product.category(), category.without(product)); //an emptied category is still counted
+        return new CategoryIndex(updated, foodCategories);
+    }
+
+    /// Getters
+    /*The count function takes a category name and returns the number of products in it*/
+    public int count(String category) {
+        ProductTree products = categories.get(category);
+        return products == null ? 0 : products.size();
+    }
+
+    /*The counts function returns the number of products in each category, in the order the categories first got a
+    * product*/
+    public Map<String, Integer> counts() {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Map.Entry<String, ProductTree> category : categories.entrySet()) {
+            counts.put(category.getKey(), category.getValue().size());
+        }
+        return counts;
+    }
+
+    /*The products function takes a category name, the position of the first product and the largest number of
+    * products to return, and returns those products of the category. Only the products on the page are gone
+    * through.*/
+    public List<Product> products(String category, int offset, int limit) {
+        ProductTree products = categories.get(category);
+        return products == null ? new ArrayList<>() : products.range(offset, limit);
+    }
+
+    public int foodProductCount() {
+        int count = 0;
+        for (String category : foodCategories) {
+            count += count(category);
+        }
+        return count;
+    }
+
+    /*The foodProducts function returns a new list with the products of every food category*/
+    public List<FoodProduct> foodProducts() {
+        List<FoodProduct> foodProducts = new ArrayList<>(foodProductCount());
+        for (String category : foodCategories) {
+            categories.get(category).forEach(product -> foodProducts.add((FoodProduct) product));
+        }
+        return foodProducts;
+    }
+}
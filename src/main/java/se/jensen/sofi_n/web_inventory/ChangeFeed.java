@@ -0,0 +1,218 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// The ChangeFeed class publishes the changes of an Inventory to any number of Flow subscribers, so other parts of
+/// the application can follow the inventory instead of polling it.
+///
+/// Every subscriber gets a bounded buffer of its own and is sent changes from it, on a thread of the executor, only
+/// as far as it has requested them. Publishing just puts the change in each buffer and never waits, so a slow
+/// subscriber never holds up the stock changes or the other subscribers. A subscriber that falls so far behind that
+/// its buffer is full has missed changes, and is sent onError with an IllegalStateException and dropped. It can
+/// subscribe again and read the catalog anew.
+///
+/// The signals to one subscriber are sent one at a time, in the order the changes were published. A subscriber that
+/// throws from one of its methods is dropped.
+///
+public final class ChangeFeed implements Flow.Publisher<InventoryChange> {
+    /// Attributes
+    private final Executor executor; //runs the deliveries
+    private final int BUFFER_SIZE; //changes buffered per subscriber unless it asks for another size
+    private final List<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    /// Constructor
+    ChangeFeed(Executor executor, int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be at least 1");
+        }
+        this.executor = executor;
+        this.BUFFER_SIZE = bufferSize;
+    }
+
+    /// Subscribing
+    @Override
+    public void subscribe(Flow.Subscriber<? super InventoryChange> subscriber) {
+        subscribe(subscriber, BUFFER_SIZE);
+    }
+
+    /*The subscribe function takes a subscriber and the most changes to buffer for it. Every change published from
+    * now on is buffered for it, even before its onSubscribe has been called. If the feed is closed the subscriber
+    * is completed right away.*/
+    public void subscribe(Flow.Subscriber<? super InventoryChange> subscriber, int bufferSize) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be at least 1");
+        }
+        ChangeSubscription subscription = new ChangeSubscription(subscriber, bufferSize);
+        subscriptions.add(subscription);
+        if (closed) { //checked after adding, so close either completes it or this does
+            subscription.complete();
+        }
+        subscription.signal(); //sends onSubscribe
+    }
+
+    /// Publishing
+    /*The hasSubscribers function tells if anyone would receive a published change, so the Inventory can skip
+    * creating changes no one reads*/
+    boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /*The publish function takes a change and puts it in the buffer of every subscriber. It never waits.*/
+    void publish(InventoryChange change) {
+        for (ChangeSubscription subscription : subscriptions) {
+            subscription.offer(change);
+        }
+    }
+
+    /*The close function completes every subscriber once it has been sent the changes in its buffer. Changes
+    * published afterwards are dropped.*/
+    void close() {
+        closed = true;
+        for (ChangeSubscription subscription : subscriptions) {
+            subscription.complete();
+        }
+    }
+
+    /// Subscription
+    /// one subscriber's buffer and demand. The deliveries are drained by one executor task at a time, started by
+    /// signal when there is something to send and kept going while more is signalled.
+    private final class ChangeSubscription implements Flow.Subscription, Runnable {
+        private final Flow.Subscriber<? super InventoryChange> subscriber;
+        private final BlockingQueue<InventoryChange> buffer;
+        private final int bufferSize;
+        private final AtomicLong demand = new AtomicLong(); //requested and not yet sent, Long.MAX_VALUE is unbounded
+        private final AtomicInteger work = new AtomicInteger(); //signals not yet handled by the draining task
+        private boolean subscribed; //onSubscribe sent, only used by the draining task
+        private volatile boolean cancelled; //cancelled or terminated, nothing more is sent
+        private volatile boolean overflowed; //a change didn't fit in the buffer
+        private volatile boolean completed; //the feed is closed, complete once the buffer is sent
+        private volatile IllegalArgumentException badRequest; //from request with a non-positive number
+
+        ChangeSubscription(Flow.Subscriber<? super InventoryChange> subscriber, int bufferSize) {
+            this.subscriber = subscriber;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+            this.bufferSize = bufferSize;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                badRequest = new IllegalArgumentException("Requested " + n + " changes, must be positive");
+            } else {
+                demand.getAndUpdate(requested -> requested + n < 0 ? Long.MAX_VALUE : requested + n);
+            }
+            signal();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+            signal(); //the draining task clears the buffer
+        }
+
+        void offer(InventoryChange change) {
+            if (cancelled) {
+                return;
+            }
+            if (!buffer.offer(change)) {
+                overflowed = true;
+                signal();
+            } else if (demand.get() > 0) { //otherwise sent when requested
+                signal();
+            }
+        }
+
+        void complete() {
+            completed = true;
+            signal();
+        }
+
+        void signal() {
+            if (work.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) { //the executor is shut down
+                    if (completed) {
+                        run(); //only the last signals are left, send them on this thread
+                    } else {
+                        terminate();
+                    }
+                }
+            }
+        }
+
+        /*The run function drains until no signal arrived during the last round*/
+        @Override
+        public void run() {
+            int signals = 1;
+            do {
+                try {
+                    drain();
+                } catch (RuntimeException e) { //the subscriber broke the contract, stop sending to it
+                    terminate();
+                }
+                signals = work.addAndGet(-signals);
+            } while (signals != 0);
+        }
+
+        /*The drain function sends onSubscribe the first time, then as many buffered changes as have been requested,
+        * then onError or onComplete if the subscription has ended*/
+        private void drain() {
+            if (!subscribed) {
+                subscribed = true;
+                subscriber.onSubscribe(this);
+            }
+            if (cancelled) {
+                buffer.clear();
+                return;
+            }
+            IllegalArgumentException request = badRequest;
+            if (request != null) {
+                terminate();
+                subscriber.onError(request);
+                return;
+            }
+            long requested = demand.get();
+            long sent = 0;
+            while (sent != requested && !cancelled) {
+                InventoryChange change = buffer.poll();
+                if (change == null) {
+                    break;
+                }
+                subscriber.onNext(change);
+                sent++;
+            }
+            if (sent > 0 && requested != Long.MAX_VALUE) {
+                demand.addAndGet(-sent);
+            }
+            if (cancelled) {
+                buffer.clear();
+            } else if (overflowed) {
+                terminate();
+                subscriber.onError(new IllegalStateException("Subscriber fell behind by more than "
+                        + bufferSize + " changes"));
+            } else if (completed && buffer.isEmpty()) {
+                terminate();
+                subscriber.onComplete();
+            }
+        }
+
+        private void terminate() {
+            cancelled = true;
+            subscriptions.remove(this);
+            buffer.clear();
+        }
+    }
+}
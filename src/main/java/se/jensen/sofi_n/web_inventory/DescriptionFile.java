@@ -0,0 +1,94 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/// The DescriptionFile class gives access to product descriptions left in a memory mapped products file or binary
+/// snapshot instead of being read at startup, used by the lazy description load mode of Inventory. A description
+/// is decoded from the mapped bytes the first time it is asked for, and the most recently viewed ones are kept in a
+/// small LRU cache, so showing the same product again doesn't decode it again.
+///
+/// The file is mapped as a whole through an automatic arena and unmapped by the garbage collector once nothing uses
+/// it. Saving replaces the files by moving a new file over them, which leaves the mapped old file readable on Linux
+/// and macOS. Windows refuses to replace a file that is mapped, so the lazy mode should not be used there.
+///
+public class DescriptionFile {
+    /// Attributes
+    static final long NOT_IN_FILE = -1; //description reference of a product whose description was read
+    private static final int LENGTH_BITS = 24; //a reference holds the offset above the length
+    static final int MAX_LENGTH = (1 << LENGTH_BITS) - 1; //longer descriptions are read at startup
+    private static final int CACHE_SIZE = 256; //descriptions kept decoded
+    private final MemorySegment mapping;
+    private final Map<Long, String> cache = new LinkedHashMap<>(CACHE_SIZE * 2, 0.75f, true) { //access order
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /// Loaded products
+    /// products in file order, and where each one's description is in the description file, or NOT_IN_FILE. The
+    /// file and the array are null when every description was read.
+    public record LoadedProducts(List<Product> products, DescriptionFile descriptionFile, long[] descriptions) {
+        /*The description function takes a position in the list and returns that product's description reference*/
+        long description(int index) {
+            return descriptions == null ? NOT_IN_FILE : descriptions[index];
+        }
+    }
+
+    /// Constructor
+    private DescriptionFile(MemorySegment mapping) {
+        this.mapping = mapping;
+    }
+
+    /*The map function takes an open file channel and maps the whole file for reading descriptions from it*/
+    static DescriptionFile map(FileChannel channel) throws IOException {
+        return new DescriptionFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), Arena.ofAuto()));
+    }
+
+    /// References
+    /*The reference function takes the offset and length in bytes of a description in the file and packs them into
+    * one long, or returns NOT_IN_FILE if the description is too long to be referenced*/
+    static long reference(long offset, int length) {
+        return length > MAX_LENGTH ? NOT_IN_FILE : offset << LENGTH_BITS | length;
+    }
+
+    static long offset(long reference) {
+        return reference >>> LENGTH_BITS;
+    }
+
+    static int length(long reference) {
+        return (int) (reference & MAX_LENGTH);
+    }
+
+    /// Reading
+    /*The read function takes a description reference and returns the description*/
+    String read(long reference) {
+        return read(offset(reference), length(reference));
+    }
+
+    /*The read function takes the offset and length in bytes of a description in the file and returns it decoded,
+    * from the cache if it was read recently*/
+    String read(long offset, int length) {
+        synchronized (cache) {
+            String cached = cache.get(offset);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        byte[] bytes = new byte[length];
+        MemorySegment.copy(mapping, ValueLayout.JAVA_BYTE, offset, bytes, 0, length);
+        String description = new String(bytes, StandardCharsets.UTF_8);
+        synchronized (cache) {
+            cache.put(offset, description);
+        }
+        return description;
+    }
+}
@@ -2,7 +2,8 @@ package se.jensen.sofi_n.web_inventory;
 
 /// The EnergyDrink class is intended for creating a product object of the type EnergyDrink. The class inherits from
 /// FoodProduct and contains all of its supers attributes and functions as well as an override on the String category()
-/// funtion, returning the String "EnergyDrinks". It also contains an overload of the setNutrientTable function.
+/// funtion, returning the String "EnergyDrinks". It also contains an overload of the setNutrientTable function and uses
+/// a nutrient schema with caffeine added.
 ///
 
 public class EnergyDrink extends FoodProduct {
@@ -18,9 +19,14 @@ public class EnergyDrink extends FoodProduct {
         return "Energy drinks";
     }
 
+    /// nutrientSchema override
+    @Override
+    public NutrientSchema nutrientSchema() {
+        return NutrientSchema.ENERGY_DRINK;
+    }
+
     ///  setNutrientTable overload
     public void setNutrientTable(int kcal, int fat, int carbs, int protein, int caffeine){
-        super.setNutrientTable(kcal, fat, carbs, protein);
-        getNutrientTable().put("Caffeine(mg)", caffeine);
+        setNutrientValues(new int[] {kcal, fat, carbs, protein, caffeine});
     }
 }
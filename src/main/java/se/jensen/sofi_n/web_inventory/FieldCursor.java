@@ -0,0 +1,305 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.nio.charset.StandardCharsets;
+
+/// The FieldCursor class reads the semicolon separated fields of one line from the products or nutrient table files
+/// without splitting the line. It can be pointed at a String or directly at the UTF-8 bytes of a line, and reads
+/// numbers straight from the characters instead of creating a String per field, so the only objects created while
+/// parsing a line are the Strings that are actually kept, like the name and description.
+///
+/// Instead of throwing exceptions, a failed read sets a status code that can be checked with status(). Once a read
+/// has failed the status stays set until the cursor is reset, so several fields can be read before checking.
+///
+/// A cursor is reused for many lines but is not thread safe, each thread should use its own.
+///
+public class FieldCursor {
+    /// Status codes
+    public static final int OK = 0;
+    public static final int MISSING_FIELD = 1;
+    public static final int BAD_NUMBER = 2;
+
+    /// Attributes
+    private static final char SEPARATOR = ';';
+    private static final int MAX_FAST_DIGITS = 15; //digits that always fit exactly in a double
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private byte[] bytes; //used when reading bytes
+    private CharSequence text; //used when reading a String
+    private int start; //start of the line
+    private int position; //start of the next field, past the end when all fields are read
+    private int end; //end of the line
+    private int fieldStart; //bounds of the last field read
+    private int fieldEnd;
+    private int status = OK;
+
+    /// Reset functions
+    /*The reset function takes a line of text and moves the cursor to its first field*/
+    public FieldCursor reset(CharSequence line) {
+        this.text = line;
+        this.bytes = null;
+        return reset(0, line.length());
+    }
+
+    /*The reset function takes a byte array holding UTF-8 text, with the offset and length of one line in it, and
+    * moves the cursor to the first field of that line*/
+    public FieldCursor reset(byte[] lineBytes, int offset, int length) {
+        this.bytes = lineBytes;
+        this.text = null;
+        return reset(offset, offset + length);
+    }
+
+    private FieldCursor reset(int start, int end) {
+        this.start = start;
+        this.position = start;
+        this.end = end;
+        this.fieldStart = start;
+        this.fieldEnd = start;
+        this.status = OK;
+        return this;
+    }
+
+    /// Status
+    public int status() {return status;}
+
+    public boolean ok() {return status == OK;}
+
+    /*The hasMore function returns true if there are fields left to read*/
+    public boolean hasMore() {
+        return position <= end;
+    }
+
+    /*The fieldCount function counts all fields on the line, without moving the cursor*/
+    public int fieldCount() {
+        int count = 1;
+        for (int i = start; i < end; i++) {
+            if (charAt(i) == SEPARATOR) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /// Reading fields
+    /*The nextString function returns the next field as a String*/
+    public String nextString() {
+        if (!nextField()) {
+            return null;
+        }
+        return lastField();
+    }
+
+    /*The skipField function moves past the next field without creating a String for it. Returns false and sets the
+    * status if there are no more fields.*/
+    public boolean skipField() {
+        return nextField();
+    }
+
+    /*The lastFieldStart and lastFieldEnd functions return the bounds of the last field read, as indexes in the byte
+    * array or text the cursor was reset with*/
+    public int lastFieldStart() {return fieldStart;}
+
+    public int lastFieldEnd() {return fieldEnd;}
+
+    /*The nextIndexOf function reads the next field and returns the index of the option it equals, or -1 if it
+    * matches none of them, without creating a String for the field*/
+    public int nextIndexOf(String[] options) {
+        if (!nextField()) {
+            return -1;
+        }
+        int length = fieldEnd - fieldStart;
+        for (int option = 0; option < options.length; option++) {
+            String candidate = options[option];
+            if (candidate.length() == length && fieldEquals(candidate)) {
+                return option;
+            }
+        }
+        return -1;
+    }
+
+    /*The nextInt function parses the next field as an integer. On failure the status is set and 0 is returned.*/
+    public int nextInt() {
+        if (!nextField()) {
+            return 0;
+        }
+        int i = fieldStart;
+        boolean negative = false;
+        if (i < fieldEnd && (charAt(i) == '-' || charAt(i) == '+')) {
+            negative = charAt(i) == '-';
+            i++;
+        }
+        if (i == fieldEnd) {
+            return fail(BAD_NUMBER);
+        }
+        long value = 0;
+        for (; i < fieldEnd; i++) {
+            int digit = charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return fail(BAD_NUMBER);
+            }
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                return fail(BAD_NUMBER); //overflow
+            }
+        }
+        if (negative) {
+            value = -value;
+        }
+        if (value > Integer.MAX_VALUE) {
+            return fail(BAD_NUMBER);
+        }
+        return (int) value;
+    }
+
+    /*The nextDouble function parses the next field as a decimal number, like 99.0, -1.5 or 1.0E7. Numbers with up to
+    * 15 digits and a small exponent are calculated directly and exactly, anything else (very long or tiny numbers,
+    * NaN, Infinity) falls back to Double.parseDouble. On failure the status is set and 0 is returned.*/
+    public double nextDouble() {
+        if (!nextField()) {
+            return 0;
+        }
+        int i = fieldStart;
+        boolean negative = false;
+        if (i < fieldEnd && (charAt(i) == '-' || charAt(i) == '+')) {
+            negative = charAt(i) == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean anyDigit = false;
+        //integer part
+        for (; i < fieldEnd && isDigit(charAt(i)); i++) {
+            anyDigit = true;
+            if (mantissa != 0 || charAt(i) != '0') {
+                digits++;
+            }
+            mantissa = mantissa * 10 + (charAt(i) - '0');
+            if (digits > MAX_FAST_DIGITS) {
+                return slowDouble();
+            }
+        }
+        //fraction part
+        if (i < fieldEnd && charAt(i) == '.') {
+            i++;
+            for (; i < fieldEnd && isDigit(charAt(i)); i++) {
+                anyDigit = true;
+                if (mantissa != 0 || charAt(i) != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (charAt(i) - '0');
+                exponent--;
+                if (digits > MAX_FAST_DIGITS) {
+                    return slowDouble();
+                }
+            }
+        }
+        if (!anyDigit) {
+            return slowDouble(); //NaN, Infinity or not a number at all
+        }
+        //exponent part
+        if (i < fieldEnd && (charAt(i) == 'E' || charAt(i) == 'e')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < fieldEnd && (charAt(i) == '-' || charAt(i) == '+')) {
+                negativeExponent = charAt(i) == '-';
+                i++;
+            }
+            if (i == fieldEnd) {
+                return fail(BAD_NUMBER);
+            }
+            int value = 0;
+            for (; i < fieldEnd; i++) {
+                if (!isDigit(charAt(i)) || value > 1000) {
+                    return slowDouble();
+                }
+                value = value * 10 + (charAt(i) - '0');
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (i != fieldEnd) {
+            return slowDouble(); //trailing characters, like the d or f suffixes Java accepts
+        }
+        double result;
+        if (exponent == 0) {
+            result = mantissa;
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            result = mantissa / POWERS_OF_TEN[-exponent]; //exact operands give a correctly rounded result
+        } else if (exponent > 0 && exponent < POWERS_OF_TEN.length) {
+            result = mantissa * POWERS_OF_TEN[exponent];
+        } else {
+            return slowDouble();
+        }
+        return negative ? -result : result;
+    }
+
+    /*The lastField function returns the last field read as a String, used for error messages*/
+    public String lastField() {
+        return substring(fieldStart, fieldEnd);
+    }
+
+    /*The line function returns the whole line as a String, used for error messages*/
+    public String line() {
+        return substring(start, end);
+    }
+
+    /// Helpers
+    /*The nextField function finds the bounds of the next field and moves past it. Returns false and sets the status if
+    * there are no more fields.*/
+    private boolean nextField() {
+        if (position > end) {
+            fail(MISSING_FIELD);
+            return false;
+        }
+        fieldStart = position;
+        int i = position;
+        while (i < end && charAt(i) != SEPARATOR) {
+            i++;
+        }
+        fieldEnd = i;
+        position = i + 1; //past the separator, or past the end for the last field
+        return true;
+    }
+
+    private boolean fieldEquals(String candidate) {
+        for (int i = 0; i < candidate.length(); i++) {
+            if (charAt(fieldStart + i) != candidate.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*The slowDouble function parses the current field with Double.parseDouble, for the rare numbers the fast path
+    * doesn't handle*/
+    private double slowDouble() {
+        try {
+            return Double.parseDouble(lastField());
+        } catch (NumberFormatException e) {
+            return fail(BAD_NUMBER);
+        }
+    }
+
+    private int fail(int failure) {
+        if (status == OK) {
+            status = failure;
+        }
+        return 0;
+    }
+
+    private int charAt(int i) {
+        return bytes != null ? bytes[i] : text.charAt(i); //separators and digits are ASCII in UTF-8
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private String substring(int from, int to) {
+        if (bytes != null) {
+            return new String(bytes, from, to - from, StandardCharsets.UTF_8);
+        }
+        return text.subSequence(from, to).toString();
+    }
+}
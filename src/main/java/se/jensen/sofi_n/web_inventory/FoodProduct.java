@@ -1,37 +1,71 @@
 package se.jensen.sofi_n.web_inventory;
 
-import java.util.LinkedHashMap;
-import java.util.List;
+import java.util.BitSet;
 import java.util.Map;
 import java.util.function.Consumer;
 
 
 /// The FoodProduct abstract class inherits from the abstract class Product and contains all functions and attributes
-/// of its super as well as a LinkedHashMap<String, Integer> attribute nutrientTable for storing nutrient values,
-/// along with functions to set, serialize and deserialize its values.
+/// of its super as well as an int array attribute nutrientValues for storing nutrient values, along with functions to
+/// set, serialize and deserialize its values. Which nutrient each value is, and in what order, is given by the
+/// NutrientSchema of the product's category, shared by all products of that category.
 ///
 public abstract class FoodProduct extends Product {
     /// Nutrient table attribute
-    private LinkedHashMap<String, Integer> nutrientTable = new LinkedHashMap<>();
+    private static final int[] NO_VALUES = {};
+    int[] nutrientValues = NO_VALUES; //in schema order, replaced as a whole and never changed in place, null when stored
+    //result codes for deserializeNutrientValues
+    public static final int NUTRIENTS_SET = 0;
+    public static final int NUTRIENTS_ORPHAN = 1; //no food product with that articleID
+    public static final int NUTRIENTS_DUPLICATE = 2; //the product already had a table from an earlier row
+    public static final int NUTRIENTS_INVALID = 3;
+    //one reusable cursor per thread for reading nutrient table lines
+    private static final ThreadLocal<FieldCursor> CURSOR = ThreadLocal.withInitial(FieldCursor::new);
 
     /// Constructor
     public FoodProduct(int articleID) {
         super(articleID);
     }
 
-    /// Setter
+    /// Schema
+    /*The nutrientSchema function returns the schema describing this category's nutrient values*/
+    public NutrientSchema nutrientSchema() {
+        return NutrientSchema.STANDARD;
+    }
+
+    /// Setters
     public void setNutrientTable(int kcal, int fat, int carbs, int protein ) {
-        LinkedHashMap<String, Integer> nutrientTable = new LinkedHashMap<>();
-        nutrientTable.put("Calories (kcal)",kcal);
-        nutrientTable.put("Fat (g)", fat);
-        nutrientTable.put("Carbs (g)", carbs);
-        nutrientTable.put("Protein (g)", protein);
+        setNutrientValues(new int[] {kcal, fat, carbs, protein});
+    }
+
+    /*The setNutrientValues function takes an array of values in schema order and sets it as the nutrient table*/
+    protected void setNutrientValues(int[] values) {
+        if (storeHandle == ProductStore.DETACHED) {
+            this.nutrientValues = values;
+        } else {
+            store.setNutrients(this, values);
+        }
+    }
 
-        this.nutrientTable = nutrientTable;
+    /// Getters
+    /*The getNutrientTable function returns a read-only map view from nutrient label to value, in schema order*/
+    public Map<String, Integer> getNutrientTable() {
+        return nutrientSchema().asMap(nutrientValues());
     }
-    /// Getter
-    public LinkedHashMap<String, Integer> getNutrientTable() {
-        return nutrientTable;
+
+    /*The nutrientCount function returns the number of nutrient values set, 0 if there is no nutrient table*/
+    public int nutrientCount() {
+        return storeHandle == ProductStore.DETACHED ? nutrientValues.length : store.nutrientCount(this);
+    }
+
+    /*The getNutrientValue function takes an index in schema order and returns that nutrient value*/
+    public int getNutrientValue(int index) {
+        return storeHandle == ProductStore.DETACHED ? nutrientValues[index] : store.nutrient(this, index);
+    }
+
+    /*The nutrientValues function returns the nutrient values in schema order, not to be changed*/
+    private int[] nutrientValues() {
+        return storeHandle == ProductStore.DETACHED ? nutrientValues : store.nutrients(this);
     }
 
     /// File handeling for nutrienttable
@@ -44,63 +78,72 @@ public abstract class FoodProduct extends Product {
         StringBuilder returnString = new StringBuilder();
         //article ID as first entry to correctly match nutrient table with product
         returnString.append(articleID);
-        // goes through each entry and adds only the value to the String, with semicolon before each value
-        for (Map.Entry<String, Integer> entry : getNutrientTable().entrySet()){
-            returnString.append(";").append(entry.getValue());
+        // goes through each value and adds it to the String, with semicolon before each value
+        for (int value : nutrientValues()){
+            returnString.append(";").append(value);
         }
         //return
         return returnString.toString();
     }
 
-    /*The deserializeNutrientValues function takes a String argument line, a list of FoodProduct items and a Consumer
-    * String type argument for relaying errors. The line is split in parts on semicolon, the parts are validated,
-    * and if the first part(articleID) matches any if the FoodPorducts in the list, and the parts are valid,
-    * the FoodProduct's nutrient table is set to the values retrieved in the following parts.*/
-    public static void deserializeNutrientValues(String line, List<FoodProduct> foodProducts, Consumer<String> onError){
-        //split
-        String[] parts = line.split(";");
+    /*The deserializeNutrientValues function takes a String argument line, the Inventory's articleID index, a BitSet of
+    * articleIDs that already had a nutrient table set during this load (or null to skip that check) and a Consumer
+    * String type argument for relaying errors. The line is read field by field with this thread's reusable
+    * FieldCursor and the fields are validated. The product is then looked up by the first field(articleID) in the
+    * index, and if it's a FoodProduct its nutrient table is set to the values retrieved in the following fields.
+    * Returns one of the NUTRIENTS_ result codes, so the caller can count rows without a matching product and
+    * duplicate rows instead of reporting each one.*/
+    public static int deserializeNutrientValues(String line, ProductIndex index, BitSet loaded, Consumer<String> onError){
+        FieldCursor cursor = CURSOR.get().reset(line);
         //Validating length is 5 or 6 (6 for EnergyDrink objects, 5 for other FoodProduct objects)
-        if (parts.length < 5) {
+        int fieldCount = cursor.fieldCount();
+        if (fieldCount < 5) {
             onError.accept("Missing fields on line" + line);
+            return NUTRIENTS_INVALID;
         }
-        if (parts.length > 6){
+        if (fieldCount > 6){
             onError.accept("Too many fields on line" + line);
+            return NUTRIENTS_INVALID;
         }
         //Validating numberformat and parsing
-        try{
-            int articleID = Integer.parseInt(parts[0]);
-            int kcal = Integer.parseInt(parts[1]);
-            int fat = Integer.parseInt(parts[2]);
-            int carbs = Integer.parseInt(parts[3]);
-            int protein = Integer.parseInt(parts[4]);
+        int articleID = cursor.nextInt();
+        int kcal = cursor.nextInt();
+        int fat = cursor.nextInt();
+        int carbs = cursor.nextInt();
+        int protein = cursor.nextInt();
+        int caffeine = fieldCount == 6 ? cursor.nextInt() : 0;
+        if (!cursor.ok()) {
+            onError.accept("Incorrect format on line" + line);
+            return NUTRIENTS_INVALID;
+        }
 
-            //goes through FoodProduct list
-            for (FoodProduct product : foodProducts) {
-                //searches for articleID match
-                if (product.articleID == articleID) {
-                    //handles EnergyDrink objects
-                    if (product instanceof EnergyDrink) {
-                        if(parts.length == 6){
-                            //sets nutrient table
-                            int caffeine = Integer.parseInt(parts[5]);
-                            ((EnergyDrink) product).setNutrientTable(kcal,fat,carbs,protein,caffeine);
-                        }else{
-                            onError.accept("Missing fields on line" + line);
-                        }
-                    }
-                    //handles other FoodProduct objects
-                    else {
-                        if (parts.length == 5) {
-                            //sets nutrient table
-                            product.setNutrientTable(kcal,fat,carbs,protein);
-                        }else{
-                            onError.accept("Too many fields on line" + line);
-                        }
-                    }
-                }
+        //looks up the articleID
+        if (!(index.get(articleID) instanceof FoodProduct product)) {
+            return NUTRIENTS_ORPHAN;
+        }
+        //handles EnergyDrink objects
+        if (product instanceof EnergyDrink) {
+            if (fieldCount != 6) {
+                onError.accept("Missing fields on line" + line);
+                return NUTRIENTS_INVALID;
             }
-        }catch (NumberFormatException e){
-            onError.accept("Incorrect format on line" + line);
+            ((EnergyDrink) product).setNutrientTable(kcal,fat,carbs,protein,caffeine);
+        }
+        //handles other FoodProduct objects
+        else {
+            if (fieldCount != 5) {
+                onError.accept("Too many fields on line" + line);
+                return NUTRIENTS_INVALID;
+            }
+            product.setNutrientTable(kcal,fat,carbs,protein);
+        }
+        //later rows replace earlier ones, but are counted as duplicates
+        if (loaded != null && articleID >= 0) {
+            if (loaded.get(articleID)) {
+                return NUTRIENTS_DUPLICATE;
+            }
+            loaded.set(articleID);
         }
+        return NUTRIENTS_SET;
     }
-}
\ No newline at end of file
+}
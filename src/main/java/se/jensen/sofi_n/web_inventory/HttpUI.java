@@ -0,0 +1,515 @@
+package se.jensen.sofi_n.web_inventory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/// The HttpUI class is a headless implementation of the UI interface that serves the Inventory logic over HTTP, using
+/// the JDK's built-in HTTP server with one virtual thread per request. It uses no JavaFX classes.
+///
+/// Each request runs the same Inventory flows as the desktop UI. Instead of asking a user, the prompts are answered
+/// from the request's parameters (query string or form body), and whatever the Inventory shows is collected into
+/// the response. Every request gets its own RequestContext, kept per thread since each request has its own thread.
+///
+///   GET    /products                    one page of products and stock: offset, limit (default 50, at most 1000)
+///   GET    /products?format=text        all products and stock as plain text rows, streamed as they are written
+///   GET    /products?q=whey+vanilla     best matches for the words in name or description: limit (default 20)
+///   GET    /products?category=...       one page of the products in a category: offset, limit
+///   GET    /categories                  number of products in each category
+///   GET    /products/{id}               product information
+///   POST   /products                    add: category, name, price, description, and for food products
+///                                       kcal, fat, carbs, protein (and caffeine for energy drinks)
+///   POST   /products/import             add every product of the catalog in the body, semicolon separated or CSV,
+///                                       and respond with a report of the rejected rows
+///   DELETE /products/{id}               remove product
+///   POST   /products/{id}/increase      increase stock: quantity
+///   POST   /products/{id}/decrease      decrease stock: quantity
+///
+/// Responses are JSON. Errors shown by the Inventory are returned with status 400, or 404 for unknown products.
+///
+public class HttpUI implements UI {
+    /// Attributes
+    private final ThreadLocal<RequestContext> currentRequest = new ThreadLocal<>();
+    private Inventory inventory;
+    private HttpServer server;
+    private ExecutorService executor;
+    private final int DEFAULT_PAGE_SIZE = 50;
+    private final int MAX_PAGE_SIZE = 1000;
+    private final int DEFAULT_SEARCH_LIMIT = 20;
+
+    /// Request context
+    /// the parameters of one request and everything the Inventory showed while handling it
+    private static class RequestContext {
+        final Map<String, String> params;
+        final List<String> errors = new ArrayList<>();
+        final List<String> answeredPrompts = new ArrayList<>();
+        String title;
+        String text;
+        Product product;
+        ProductPage page;
+        List<Product> searchResults;
+        Product created; //by the add product flow
+        boolean notFound; //the product the request is about doesn't exist, or was removed meanwhile
+
+        RequestContext(Map<String, String> params) {
+            this.params = params;
+        }
+    }
+
+    ///inventory setter
+    public void setInventory(Inventory inventory) {
+        this.inventory = inventory;
+    }
+
+    /// Override functions from UI interface
+    ///
+    /* The promptInput function answers the prompt from the request parameters, "quantity" for quantity prompts and
+    * "input" for anything else. Each prompt is only answered once per request, so a flow that asks again after an
+    * error stops instead of looping on the same bad value.*/
+    @Override
+    public void promptInput(String prompt, Consumer<String> onResult) {
+        RequestContext request = currentRequest.get();
+        if (request == null || request.answeredPrompts.contains(prompt)) {
+            return;
+        }
+        request.answeredPrompts.add(prompt);
+        String key = prompt.startsWith("Quantity") ? "quantity" : "input";
+        onResult.accept(request.params.get(key));
+    }
+
+    /* The showError function adds the error to the response, or prints it if it didn't come from a request, like
+    * errors while loading at startup or from the background compactor*/
+    @Override
+    public void showError(String error) {
+        RequestContext request = currentRequest.get();
+        if (request == null) {
+            System.err.println("Error: " + error);
+        } else {
+            request.errors.add(error);
+        }
+    }
+
+    /* The showProductNotFound function adds the error and makes the response a 404, also when another request
+    * removed the product while this one ran*/
+    @Override
+    public void showProductNotFound(int id) {
+        showError("Product not found");
+        RequestContext request = currentRequest.get();
+        if (request != null) {
+            request.notFound = true;
+        }
+    }
+
+    @Override
+    public void showTextWithTitle(String title, String message) {
+        RequestContext request = currentRequest.get();
+        if (request != null) {
+            request.title = title;
+            request.text = message;
+        }
+    }
+
+    /* The showProductPage function adds the page to the response. Other pages are asked for with the offset
+    * parameter in a new request, so onPageRequested is never called.*/
+    @Override
+    public void showProductPage(ProductPage page, Consumer<Integer> onPageRequested) {
+        RequestContext request = currentRequest.get();
+        if (request != null) {
+            request.page = page;
+        }
+    }
+
+    /* The showSearchResults function adds the results to the response*/
+    @Override
+    public void showSearchResults(String query, List<Product> results, Consumer<Integer> onProductSelected) {
+        RequestContext request = currentRequest.get();
+        if (request != null) {
+            request.searchResults = results;
+        }
+    }
+
+    /* The promptProductDetails function answers with the name, price and description parameters*/
+    @Override
+    public void promptProductDetails(int articleID, Consumer<ProductInputDetails> onResult) {
+        RequestContext request = currentRequest.get();
+        if (request == null) {
+            return;
+        }
+        onResult.accept(new ProductInputDetails(
+                request.params.get("name"), request.params.get("price"), request.params.get("description")));
+    }
+
+    /* The showCategorySelection function answers with the category parameter*/
+    @Override
+    public void showCategorySelection(Consumer<String> onCategorySelected) {
+        RequestContext request = currentRequest.get();
+        if (request != null) {
+            onCategorySelected.accept(request.params.getOrDefault("category", ""));
+        }
+    }
+
+    /* The promptNutrientInfo function answers with the kcal, fat, carbs, protein and caffeine parameters*/
+    @Override
+    public void promptNutrientInfo(FoodProduct foodProduct, Consumer<NutrientTableValues> onResult) {
+        RequestContext request = currentRequest.get();
+        if (request == null) {
+            return;
+        }
+        if (!request.params.containsKey("kcal")) {
+            onResult.accept(null); //nutrient table left out
+            return;
+        }
+        NutrientTableValues values = new NutrientTableValues();
+        values.setStandardValues(request.params.get("kcal"), request.params.get("fat"),
+                request.params.get("carbs"), request.params.get("protein"));
+        values.setCaffeineString(request.params.get("caffeine"));
+        onResult.accept(values);
+    }
+
+    /* The showAddedProduct function keeps the stored product for the response, with the articleID it actually got*/
+    @Override
+    public void showAddedProduct(Product product) {
+        RequestContext request = currentRequest.get();
+        if (request != null) {
+            request.created = product;
+        }
+    }
+
+    @Override
+    public void displayProductInformation(Product product) {
+        RequestContext request = currentRequest.get();
+        if (request != null) {
+            request.product = product;
+        }
+    }
+
+    /// Server
+    /* The start function starts the HTTP server on the passed port, handling each request on a new virtual thread*/
+    public void start(int port) throws IOException {
+        //send responses right away instead of waiting for the client's delayed ACK on kept-alive connections
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/products", this::handle);
+        server.createContext("/categories", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /* The stop function stops accepting requests, waits up to the passed number of seconds for running requests and
+    * shuts the executor down*/
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.close();
+    }
+
+    /* The handle function parses the request, runs the matching Inventory flow with this thread's RequestContext set
+    * and sends what was collected as the response*/
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            RequestContext request = new RequestContext(readParams(exchange));
+            currentRequest.set(request);
+            try {
+                route(exchange, request);
+            } catch (RuntimeException e) {
+                sendJson(exchange, 500, "{\"errors\":[" + quote(String.valueOf(e.getMessage())) + "]}");
+            } finally {
+                currentRequest.remove();
+            }
+        }
+    }
+
+    /* The route function matches method and path to an Inventory flow and sends the response*/
+    private void route(HttpExchange exchange, RequestContext request) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().split("/"); //["", "products", id, action]
+
+        if (path.length == 2 && path[1].equals("categories")) {
+            if (method.equals("GET")) {
+                sendJson(exchange, 200, categoriesJson(inventory.getCategoryCounts()));
+            } else {
+                sendJson(exchange, 405, "{\"errors\":[\"Method not allowed\"]}");
+            }
+            return;
+        }
+        if (!path[1].equals("products")) {
+            sendJson(exchange, 404, "{\"errors\":[\"Unknown request\"]}");
+            return;
+        }
+        if (path.length == 2) {
+            if (method.equals("GET")) {
+                listProducts(exchange, request);
+            } else if (method.equals("POST")) {
+                inventory.startAddProductFlow();
+                request.product = request.created; //nothing is stored if there were errors
+                respond(exchange, request, 201);
+            } else {
+                sendJson(exchange, 405, "{\"errors\":[\"Method not allowed\"]}");
+            }
+            return;
+        }
+
+        if (path.length == 3 && path[2].equals("import") && method.equals("POST")) {
+            importCatalog(exchange);
+            return;
+        }
+        int id;
+        try {
+            id = Integer.parseInt(path[2]);
+        } catch (NumberFormatException e) {
+            sendJson(exchange, 400, "{\"errors\":[\"Invalid ID format\"]}");
+            return;
+        }
+        if (inventory.searchProduct(id) == null) {
+            sendJson(exchange, 404, "{\"errors\":[\"Product not found\"]}");
+            return;
+        }
+        String action = path.length > 3 ? path[3] : "";
+        switch (method + " " + action) {
+            case "GET " -> inventory.showProductInfo(id);
+            case "DELETE " -> inventory.removeProduct(id);
+            case "POST increase" -> inventory.userIncreaseStock(id, () -> {});
+            case "POST decrease" -> inventory.userDecreaseStock(id, () -> {});
+            default -> {
+                sendJson(exchange, 404, "{\"errors\":[\"Unknown request\"]}");
+                return;
+            }
+        }
+        if (request.product == null && !method.equals("DELETE")) {
+            request.product = inventory.searchProduct(id); //show the product after stock changes
+        }
+        respond(exchange, request, 200);
+    }
+
+    /* The listProducts function searches if there is a q parameter, streams the whole listing as text if asked for,
+    * and otherwise responds with the page at the offset and limit parameters, of one category if there is a category
+    * parameter*/
+    private void listProducts(HttpExchange exchange, RequestContext request) throws IOException {
+        if (request.params.containsKey("q")) {
+            int limit;
+            try {
+                limit = Integer.parseInt(request.params.getOrDefault("limit", String.valueOf(DEFAULT_SEARCH_LIMIT)));
+            } catch (NumberFormatException e) {
+                limit = 0;
+            }
+            if (limit < 1) {
+                sendJson(exchange, 400, "{\"errors\":[\"Invalid limit\"]}");
+                return;
+            }
+            String query = request.params.get("q");
+            showSearchResults(query, inventory.searchProducts(query, Math.min(limit, MAX_PAGE_SIZE)), id -> {});
+            respond(exchange, request, 200);
+            return;
+        }
+        if ("text".equals(request.params.get("format"))) {
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0); //0 for chunked, the length isn't known until everything is written
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8))) {
+                inventory.writeProductListing(out);
+            }
+            return;
+        }
+        int offset;
+        int limit;
+        try {
+            offset = Integer.parseInt(request.params.getOrDefault("offset", "0"));
+            limit = Integer.parseInt(request.params.getOrDefault("limit", String.valueOf(DEFAULT_PAGE_SIZE)));
+        } catch (NumberFormatException e) {
+            sendJson(exchange, 400, "{\"errors\":[\"Invalid offset or limit\"]}");
+            return;
+        }
+        if (offset < 0 || limit < 1) {
+            sendJson(exchange, 400, "{\"errors\":[\"Invalid offset or limit\"]}");
+            return;
+        }
+        String category = request.params.get("category");
+        if (category != null) {
+            request.page = inventory.getCategoryPage(category, offset, Math.min(limit, MAX_PAGE_SIZE));
+        } else {
+            request.page = inventory.getProductPage(offset, Math.min(limit, MAX_PAGE_SIZE));
+        }
+        respond(exchange, request, 200);
+    }
+
+    /* The importCatalog function streams the request body into the inventory's import and responds with the report,
+    * with status 400 if the catalog couldn't be read to the end*/
+    private void importCatalog(HttpExchange exchange) throws IOException {
+        ImportReport report;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(exchange.getRequestBody(),
+                StandardCharsets.UTF_8))) {
+            report = inventory.importCatalog(in, "request body");
+        }
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"rows\":").append(report.rows());
+        json.append(",\"imported\":").append(report.imported());
+        json.append(",\"rejected\":").append(report.rejected());
+        json.append(",\"errors\":[");
+        for (int i = 0; i < report.errors().size(); i++) {
+            json.append(i > 0 ? "," : "").append(quote(report.errors().get(i)));
+        }
+        json.append("]");
+        if (!report.completed()) {
+            json.append(",\"failure\":").append(quote(report.failure()));
+        }
+        sendJson(exchange, report.completed() ? 200 : 400, json.append("}").toString());
+    }
+
+    /// Responses
+    /* The respond function sends the errors with status 400 if there were any, or 404 if the product wasn't found,
+    * otherwise what was shown*/
+    private void respond(HttpExchange exchange, RequestContext request, int status) throws IOException {
+        if (!request.errors.isEmpty()) {
+            StringBuilder json = new StringBuilder("{\"errors\":[");
+            for (int i = 0; i < request.errors.size(); i++) {
+                json.append(i > 0 ? "," : "").append(quote(request.errors.get(i)));
+            }
+            sendJson(exchange, request.notFound ? 404 : 400, json.append("]}").toString());
+        } else if (request.searchResults != null) {
+            sendJson(exchange, status, productsJson(request.searchResults, new StringBuilder("{\"products\":"))
+                    .append("}").toString());
+        } else if (request.page != null) {
+            sendJson(exchange, status, pageJson(request.page));
+        } else if (request.product != null) {
+            sendJson(exchange, status, productJson(request.product));
+        } else if (request.text != null) {
+            sendJson(exchange, status, "{\"title\":" + quote(request.title) + ",\"text\":" + quote(request.text) + "}");
+        } else {
+            sendJson(exchange, status, "{}");
+        }
+    }
+
+    /* The productJson function returns the product's information, and nutrient table for food products, as JSON*/
+    private String productJson(Product product) {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"articleID\":").append(product.getArticleID());
+        json.append(",\"category\":").append(quote(product.category()));
+        json.append(",\"name\":").append(quote(product.getName()));
+        json.append(",\"price\":").append(product.getPrice());
+        json.append(",\"description\":").append(quote(product.getDescription()));
+        json.append(",\"stock\":").append(product.getStock());
+        if (product instanceof FoodProduct) {
+            json.append(",\"nutrients\":{");
+            boolean first = true;
+            for (Map.Entry<String, Integer> entry : ((FoodProduct) product).getNutrientTable().entrySet()) {
+                json.append(first ? "" : ",").append(quote(entry.getKey())).append(":").append(entry.getValue());
+                first = false;
+            }
+            json.append("}");
+        }
+        return json.append("}").toString();
+    }
+
+    /* The pageJson function returns the page with the articleID, name and stock of each product, and the offset of the
+    * next page or null if it is the last, as JSON*/
+    private String pageJson(ProductPage page) {
+        StringBuilder json = new StringBuilder("{");
+        json.append("\"offset\":").append(page.offset());
+        json.append(",\"total\":").append(page.total());
+        json.append(",\"next\":").append(page.hasNext() ? String.valueOf(page.nextOffset()) : "null");
+        json.append(",\"products\":");
+        return productsJson(page.products(), json).append("}").toString();
+    }
+
+    /* The productsJson function adds a JSON array with the articleID, name and stock of each product to the builder*/
+    private StringBuilder productsJson(List<Product> products, StringBuilder json) {
+        json.append("[");
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            json.append(i > 0 ? "," : "").append("{\"articleID\":").append(product.getArticleID());
+            json.append(",\"name\":").append(quote(product.getName()));
+            json.append(",\"stock\":").append(product.getStock()).append("}");
+        }
+        return json.append("]");
+    }
+
+    /* The categoriesJson function returns the number of products in each category as a JSON object*/
+    private String categoriesJson(Map<String, Integer> counts) {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Integer> category : counts.entrySet()) {
+            json.append(json.length() > 1 ? "," : "").append(quote(category.getKey())).append(":")
+                    .append(category.getValue());
+        }
+        return json.append("}").toString();
+    }
+
+    private void sendJson(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /*The quote function returns the string as a quoted JSON string with special characters escaped*/
+    private static String quote(String string) {
+        if (string == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(string.length() + 2).append('"');
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /// Request parameters
+    /*The readParams function reads the query string parameters and, for form posts, the body parameters*/
+    private static Map<String, String> readParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseParams(exchange.getRequestURI().getRawQuery(), params);
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+            try (InputStream in = exchange.getRequestBody()) {
+                parseParams(new String(in.readAllBytes(), StandardCharsets.UTF_8), params);
+            }
+        }
+        return params;
+    }
+
+    private static void parseParams(String encoded, Map<String, String> params) {
+        if (encoded == null || encoded.isEmpty()) {
+            return;
+        }
+        for (String pair : encoded.split("&")) {
+            int split = pair.indexOf('=');
+            String key = split < 0 ? pair : pair.substring(0, split);
+            String value = split < 0 ? "" : pair.substring(split + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+}
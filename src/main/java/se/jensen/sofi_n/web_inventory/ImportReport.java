@@ -0,0 +1,34 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.util.List;
+
+/// The ImportReport record is the outcome of importing a catalog with the Inventory class's importCatalog function:
+/// where the catalog came from, how many product rows it had, how many were imported and how many were rejected,
+/// and the error messages of the first rejected rows in line order. If the catalog couldn't be read to the end,
+/// failure holds the reason and nothing was imported.
+///
+public record ImportReport(String source, int rows, int imported, int rejected, List<String> errors, String failure) {
+
+    public boolean completed() {return failure == null;}
+
+    /*The summary function returns the report as text to show in one message, with every listed error on a line of
+    * its own*/
+    public String summary() {
+        if (!completed()) {
+            return "Nothing imported from " + source + ": " + failure;
+        }
+        StringBuilder summary = new StringBuilder();
+        summary.append("Imported ").append(imported).append(" of ").append(rows).append(" products from ")
+                .append(source);
+        if (rejected > 0) {
+            summary.append(", ").append(rejected).append(" rejected:");
+            for (String error : errors) {
+                summary.append("\n").append(error);
+            }
+            if (rejected > errors.size()) {
+                summary.append("\n...and ").append(rejected - errors.size()).append(" more");
+            }
+        }
+        return summary.toString();
+    }
+}
@@ -1,18 +1,61 @@
 package se.jensen.sofi_n.web_inventory;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 /// The Inventory class handles the logic for the application. It takes a UI implementation as argument and
 /// uses the UI interface functions for all its user interaction. All the logic in this class is UI flexible
 /// as long as an implementation class of the corresponding UI interface is made.
 ///
-/// The Inventory class consists of an arraylist of type Product, an arraylist of type FoodProduct, and funtions
-/// for listing products, adding and removing products, creating/displaying nutrient tables for food products,
-/// getting product info from id, as well as adding/reducing stock and loading/writing product and nutrient table
-/// info to files.
+/// The Inventory class consists of a CatalogSnapshot of the products, in the order they were added and per category,
+/// an index of the products by articleID, and funtions for listing products, adding and removing products,
+/// creating/displaying nutrient tables for food products, getting product info from id, as well as adding/reducing
+/// stock and loading/writing product and nutrient table info to files.
+///
+/// Changes are appended to an InventoryJournal rather than rewriting the files each time. The files are rewritten as
+/// a snapshot in the background once the journal has grown large, see compactJournal.
+///
+/// Lookups, adding, removing, stock changes, loading and saving are counted and timed by InventoryMetrics, which is
+/// registered as a platform MBean and can be watched with jconsole.
+///
+/// The name, price, description, stock and nutrient values of the products in the lists are kept off the heap by a
+/// ProductStore, and the Product objects only view them. A removed product gets its fields back on the heap.
+///
+/// In the lazy description mode the descriptions aren't read at startup but left in the memory mapped products file
+/// or snapshot, and decoded the first time a product is shown, see DescriptionFile.
+///
+/// Stock can be increased and decreased from several threads at once, the Product class updates it atomically.
+/// Adding and removing products are done while holding the write lock of catalogLock, and publish a new
+/// CatalogSnapshot. Listing, paging, counting and exporting read the latest snapshot without any locking, so they
+/// never hold up adding and removing products, and a listing taken from one snapshot is consistent however long it
+/// runs. Lookups by articleID and searches take the read lock, so they never wait for each other or for stock
+/// changes.
+///
+/// Every product added or removed, stock change and nutrient table set is published as an InventoryChange on the
+/// ChangeFeed, see subscribeChanges. The changes of adding and removing are published under the write lock, in
+/// catalog order. Stock changes are published by the thread that made them once it is done, so the changes to one
+/// product from different threads can arrive in another order than they were made, but each one carries the exact
+/// stock before and after it.
 ///
 public class Inventory {
     /// Attributes
@@ -21,137 +64,700 @@ public class Inventory {
     //files
     private final String PRODUCTS_FILE;
     private final String NUTRIENT_TABLE_FILE;
+    private final String SNAPSHOT_FILE; //binary snapshot of both files, preferred at startup
+    private final boolean LAZY_DESCRIPTIONS; //descriptions decoded from the loaded file when first asked for
+    private final InventoryJournal journal;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-compactor");
+        thread.setDaemon(true); //never keeps the application running
+        return thread;
+    });
     //storing products
-    private List<Product> products = new ArrayList<>();
-    private List<FoodProduct> foodProducts = new ArrayList<>();
+    private volatile CatalogSnapshot catalog = CatalogSnapshot.EMPTY; //replaced as a whole under the write lock
+    private long catalogSequence = 0; //of the last product added
+    private ProductStore store = new ProductStore(); //fields of the products in the lists, kept off the heap
+    //guards the indexes and publishing snapshots, lookups share the read lock and only adding and removing products
+    //is exclusive
+    private final int SHUTDOWN_WAIT_SECONDS = 30; //longest wait for a running compaction when closing
+    private final ReadWriteLock catalogLock = new ReentrantReadWriteLock();
+    private final ProductIndex productIndex = new ProductIndex(); //articleID lookups, kept in sync with products
     //ID minimun
     private final int LOWEST_ID = 10000;
+    private final ArticleIdAllocator articleIDs = new ArticleIdAllocator(LOWEST_ID); //free and taken article IDs
+    private final int PAGE_SIZE = 50; //products per page when listing
+    private final int SEARCH_LIMIT = 20; //search results shown
+    private final int MAX_LISTED_ERRORS = 20; //bad lines listed in one error message when loading
+    private SearchIndex searchIndex; //built on the first search, then kept up to date with the lists
+    //changes to apply to the search index being built, null unless one is
+    private List<Consumer<SearchIndex>> searchIndexBacklog;
+    private final Object searchIndexBuild = new Object(); //held by the thread building the search index
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService changeDelivery = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "change-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final int CHANGE_BUFFER_SIZE = 4096; //changes buffered per change feed subscriber
+    private final ChangeFeed changeFeed = new ChangeFeed(changeDelivery, CHANGE_BUFFER_SIZE);
+    private final InventoryMetrics metrics = new InventoryMetrics(); //counts and latencies, shown over JMX
+    private ObjectName metricsName; //null if the metrics couldn't be registered
+
+    /// Change listener
+    /// actions for a view mirroring the catalog to perform when products are added or removed or stock changes.
+    /// Adding and removing are reported while the write lock is held, so the actions should be quick.
+    public interface ChangeListener {
+        void productAdded(Product product);
+        void productRemoved(Product product);
+        void stockChanged(Product product);
+
+        /*The productsAdded function is called instead of productAdded when many products are added at once, like in
+        * an import*/
+        default void productsAdded(List<Product> added) {
+            for (Product product : added) {
+                productAdded(product);
+            }
+        }
+    }
 
 
     /// Constructor
     /*
     The Inventory class constructor takes a UI implementing object and sets the inventorys UI attribute,
-    downloads the information stored in the product nutrient table files respectively and stores in product list
+    downloads the information stored in the binary snapshot, or if there is none the product nutrient table files
+    respectively, and stores in product list, then replays the changes recorded in the journal since the files were
+    last written
     */
     public Inventory(UI ui, String productFileName, String nutrientTableFileName) {
+        this(ui, productFileName, nutrientTableFileName, false);
+    }
+
+    /*The Inventory constructor works like the one above, but if lazyDescriptions is true the product descriptions
+    * are left in the loaded file and only decoded when first asked for*/
+    public Inventory(UI ui, String productFileName, String nutrientTableFileName, boolean lazyDescriptions) {
         this.ui = ui; //sets ui
+        this.LAZY_DESCRIPTIONS = lazyDescriptions;
         this.PRODUCTS_FILE =productFileName;
         this.NUTRIENT_TABLE_FILE = nutrientTableFileName;
-        loadProductsFromFile(PRODUCTS_FILE); //reads information and saves products to product list
-        updateFoodProductsList(); //get any food products in product list and stores in food product list
-        loadNutrientTablesFromFile(NUTRIENT_TABLE_FILE); //download nutrient tables and sets to food product objects
+        this.SNAPSHOT_FILE = productFileName + ".snapshot";
+        long start = System.nanoTime();
+        if (!loadSnapshot(SNAPSHOT_FILE)) { //fall back to the text files
+            loadProductsFromFile(PRODUCTS_FILE); //reads information and saves products to product list
+            loadNutrientTablesFromFile(NUTRIENT_TABLE_FILE); //download nutrient tables and sets to food product objects
+        }
+        journal = new InventoryJournal(PRODUCTS_FILE, ui::showError);
+        journal.replay(new JournalReplayer()); //apply changes made after the files were written
+        metrics.loads.record(System.nanoTime() - start);
+        try {
+            metricsName = metrics.register(PRODUCTS_FILE);
+        } catch (JMException e) {
+            ui.showError("Couldn't register metrics: " + e.getMessage());
+        }
+        compactJournal();
     }
 
     /// File handling logic
     /// all functions relating to reading and writing to files
     ///
-    /* The updateProductFile function takes a String file name as argument, goes through product list and
-    * calls the Product class's serialize function and writes the information into the file.*/
-    private void updateProductFile(String fileName) {
-        try (PrintWriter out = new PrintWriter(new FileWriter(fileName))) { //try with resources
-            for (Product product : products) {
+    /* The updateProductFile function takes a String file name and a list of products as arguments, goes through the
+    * list and calls the Product class's serialize function and writes the information into a temporary file, which
+    * then replaces the file. Returns true if the file was written.*/
+    final boolean updateProductFile(String fileName, List<Product> snapshot) { //package-private for the benchmarks
+        InventoryEvents.FileSave event = new InventoryEvents.FileSave();
+        event.begin();
+        File temp = new File(fileName + ".tmp");
+        try (PrintWriter out = new PrintWriter(new FileWriter(temp))) { //try with resources
+            for (Product product : snapshot) {
                 out.println(product.serialize());//one product per line
             }
         } catch (IOException e) {
             ui.showError("Couldn't save: " + e.getMessage());
+            commitSaveEvent(event, fileName, snapshot.size(), false);
+            return false;
         }
+        boolean saved = replaceFile(temp, fileName);
+        commitSaveEvent(event, fileName, snapshot.size(), saved);
+        return saved;
     }
 
-    /* The loadProductsFromFile function uses the Product class's deserialize function to read information from
-    * the products file at the root of the project folder and create an object per line using the information
-    * on each line*/
-    private void loadProductsFromFile(String fileName) {
-        products.clear(); //make sure product list is empty before loading
-        try (BufferedReader in = new BufferedReader(new FileReader(fileName))) { //try with resources
-            String line;
-            while ((line = in.readLine()) != null) { //reads line by line
-                Product product = Product.deserialize(line, ui::showError); //ui.ShowError as onError String action
-                if (product != null)
-                    products.add(product); //add product to product-list
+    /* The commitSaveEvent function fills in and commits a flight recorder event for a written file, if a recording
+    * has the event enabled*/
+    private static void commitSaveEvent(InventoryEvents.FileSave event, String fileName, int records, boolean saved) {
+        if (event.shouldCommit()) {
+            event.fileName = fileName;
+            event.records = records;
+            event.saved = saved;
+            event.bytes = saved ? new File(fileName).length() : 0;
+            event.commit();
+        }
+    }
+
+    /* The commitLoadEvent function fills in and commits a flight recorder event for a read file, if a recording has
+    * the event enabled*/
+    private static void commitLoadEvent(InventoryEvents.FileLoad event, String fileName, int records) {
+        if (event.shouldCommit()) {
+            event.fileName = fileName;
+            event.records = records;
+            event.bytes = new File(fileName).length();
+            event.commit();
+        }
+    }
+
+    /* The replaceFile function moves a fully written temporary file over the named file, so a crash while saving
+    * never leaves a half written file behind*/
+    private boolean replaceFile(File temp, String fileName) {
+        try {
+            Files.move(temp.toPath(), new File(fileName).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            ui.showError("Couldn't save: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /* The loadSnapshot function takes a String file name and loads all products and nutrient tables from the binary
+    * snapshot with that name. Returns false if there is no snapshot or it couldn't be read, so the text files can be
+    * loaded instead.*/
+    private boolean loadSnapshot(String fileName) {
+        File file = new File(fileName);
+        if (!file.exists()) {
+            return false;
+        }
+        InventoryEvents.FileLoad event = new InventoryEvents.FileLoad();
+        event.begin();
+        DescriptionFile.LoadedProducts loaded;
+        try {
+            loaded = BinarySnapshot.read(file, LAZY_DESCRIPTIONS);
+        } catch (IOException e) {
+            ui.showError("Couldn't load snapshot, loading text files instead: " + e.getMessage());
+            return false;
+        }
+        productIndex.clear();
+        searchIndex = null;
+        searchIndexBacklog = null;
+        articleIDs.clear();
+        store = new ProductStore(loaded.descriptionFile()); //products dropped from the lists keep viewing the old one
+        for (int i = 0; i < loaded.products().size(); i++) {
+            indexProduct(loaded.products().get(i), loaded.description(i));
+        }
+        catalog = catalog.replacedBy(loaded.products());
+        commitLoadEvent(event, fileName, loaded.products().size());
+        return true;
+    }
+
+    /* The updateSnapshotFile function takes a String file name and a list of products and writes them, with their
+    * nutrient tables, to a temporary file which then replaces the binary snapshot. Returns true if it was written.*/
+    private boolean updateSnapshotFile(String fileName, List<Product> snapshot) {
+        InventoryEvents.FileSave event = new InventoryEvents.FileSave();
+        event.begin();
+        File temp = new File(fileName + ".tmp");
+        try {
+            BinarySnapshot.write(temp, snapshot);
+        } catch (IOException e) {
+            ui.showError("Couldn't save: " + e.getMessage());
+            commitSaveEvent(event, fileName, snapshot.size(), false);
+            return false;
+        }
+        boolean saved = replaceFile(temp, fileName);
+        commitSaveEvent(event, fileName, snapshot.size(), saved);
+        return saved;
+    }
+
+    /* The loadProductsFromFile function uses the ProductFileLoader class to read information from the products file
+    * at the root of the project folder in parallel and create an object per line using the information on each line.
+    * The products come back in file order and are added to the list and index.*/
+    final void loadProductsFromFile(String fileName) { //package-private for the benchmarks
+        catalog = catalog.replacedBy(List.of()); //make sure product list is empty before loading
+        productIndex.clear();
+        searchIndex = null;
+        searchIndexBacklog = null;
+        articleIDs.clear();
+        InventoryEvents.FileLoad event = new InventoryEvents.FileLoad();
+        event.begin();
+        List<String> errors = new ArrayList<>(); //shown together once the file is loaded
+        try {
+            DescriptionFile.LoadedProducts loaded = ProductFileLoader.load(fileName, LAZY_DESCRIPTIONS, errors::add);
+            store = new ProductStore(loaded.descriptionFile()); //products dropped from the lists keep viewing the old one
+            List<Product> added = new ArrayList<>(loaded.products().size());
+            for (int i = 0; i < loaded.products().size(); i++) {
+                Product product = loaded.products().get(i);
+                long description = loaded.description(i);
+                if (productIndex.get(product.articleID) != null) {
+                    if (description != DescriptionFile.NOT_IN_FILE) {
+                        product.setDescription(loaded.descriptionFile().read(description));
+                    }
+                    errors.add("Duplicate article ID in line: " + product.serialize());
+                } else {
+                    added.add(indexProduct(product, description)); //add product to product-list and index
+                }
             }
+            catalog = catalog.replacedBy(added);
+            commitLoadEvent(event, fileName, loaded.products().size());
         } catch (IOException e) {
-            ui.showError("Couldn't load: " + e.getMessage());
+            errors.add("Couldn't load: " + e.getMessage());
+        }
+        if (!errors.isEmpty()) {
+            StringBuilder message = new StringBuilder(errors.size() + " problems loading " + fileName + ":");
+            for (String error : errors.subList(0, Math.min(errors.size(), MAX_LISTED_ERRORS))) {
+                message.append("\n").append(error);
+            }
+            if (errors.size() > MAX_LISTED_ERRORS) {
+                message.append("\n...and ").append(errors.size() - MAX_LISTED_ERRORS).append(" more");
+            }
+            ui.showError(message.toString());
         }
     }
 
     /*The loadNutrientTablesFromFile function takes a String filename as argument, reds ech line and passes it, along
-     the current food product list into the food product class's deserializeNutrientValues function, which matches
-    * the articleIDs in each of the nutirenttablefile lines with a product in that list and sets its nutrienttable
-    * from the values stored in that line of file */
+     the articleID index into the food product class's deserializeNutrientValues function, which looks up the
+    * articleID in each of the nutirenttablefile lines in the index and sets that food product's nutrienttable
+    * from the values stored in that line of file. Rows without a matching food product and duplicate rows are
+    * counted and reported once when the whole file is read */
     private void loadNutrientTablesFromFile(String fileName) {
+        int orphans = 0;
+        int duplicates = 0;
+        BitSet loaded = new BitSet(); //articleIDs that got a table from an earlier row
+        Consumer<String> onError = ui::showError;
+        InventoryEvents.FileLoad event = new InventoryEvents.FileLoad();
+        event.begin();
+        int rows = 0;
         try (BufferedReader in = new BufferedReader(new FileReader(fileName))) { //try with resources
             String line;
             while ((line = in.readLine()) != null) {
-                FoodProduct.deserializeNutrientValues(line, foodProducts, ui::showError);//passes line to desiralise
+                rows++;
+                int result = FoodProduct.deserializeNutrientValues(line, productIndex, loaded, onError);
+                if (result == FoodProduct.NUTRIENTS_ORPHAN) {
+                    orphans++;
+                } else if (result == FoodProduct.NUTRIENTS_DUPLICATE) {
+                    duplicates++;
+                }
             }
+            commitLoadEvent(event, fileName, rows);
         } catch (IOException e) {
             ui.showError("Couldn't load: " + e.getMessage());
         }
+        if (orphans > 0 || duplicates > 0) {
+            ui.showError("Nutrient tables: " + orphans + " rows without a matching food product and "
+                    + duplicates + " duplicate rows in " + fileName);
+        }
     }
 
-    /*The function updateNutrientTableFile takes a String argument, opens a FileWriter for the filename passed,
-    * goes through the food product list, checck if it has a nutrient table with sufficient number of elements,
-    *  and if so, writes the products articleID and its nitrient table its values as a line in the file using
-    * the serializeNutrientValues and the println function*/
-    private void updateNutrientTablesFile(String fileName) {
-        try (PrintWriter out = new PrintWriter(new FileWriter(fileName))) {
-            for (FoodProduct foodProduct : foodProducts) {
-                if (foodProduct.getNutrientTable() == null) {
+    /*The function updateNutrientTableFile takes a String file name and a list of food products, opens a FileWriter
+    * for a temporary file, goes through the food product list, checck if it has a nutrient table with sufficient
+    * number of elements, and if so, writes the products articleID and its nitrient table its values as a line in the
+    * file using the serializeNutrientValues and the println function. The temporary file then replaces the file.*/
+    private boolean updateNutrientTablesFile(String fileName, List<FoodProduct> snapshot) {
+        InventoryEvents.FileSave event = new InventoryEvents.FileSave();
+        event.begin();
+        int written = 0;
+        File temp = new File(fileName + ".tmp");
+        try (PrintWriter out = new PrintWriter(new FileWriter(temp))) {
+            for (FoodProduct foodProduct : snapshot) {
+                if (foodProduct.nutrientCount() == 0) {
                     ui.showError("No nutrient table found for article " + foodProduct.articleID);
-                } else if (foodProduct.getNutrientTable().size() < 4) {
+                } else if (foodProduct.nutrientCount() < 4) {
                     ui.showError("Wrong format nutrient table for article " + foodProduct.articleID);
                 } else {
                     out.println(foodProduct.serializeNutrientValues());
+                    written++;
                 }
             }
         } catch (IOException e) {
             ui.showError("Couldn't save: " + e.getMessage());
+            commitSaveEvent(event, fileName, written, false);
+            return false;
+        }
+        boolean saved = replaceFile(temp, fileName);
+        commitSaveEvent(event, fileName, written, saved);
+        return saved;
+    }
+
+    /// Journal functions
+    /// functions for recording changes in the journal and folding it into the files
+    ///
+    /* The compactJournal function checks if the journal should be folded into a new binary snapshot. If so, the
+    * journal is moved aside and the catalog snapshot taken right away, so it holds exactly the changes in the moved
+    * journal, and the snapshot file is written from it on the background compactor thread. The product and
+    * nutrient table text files are then rewritten as well, so they stay a readable export of the inventory. Changes
+    * made meanwhile go to the new journal.*/
+    private void compactJournal() {
+        if (!journal.needsCompaction()) {
+            return;
+        }
+        CatalogSnapshot snapshot;
+        catalogLock.writeLock().lock(); //no products added or removed between moving the journal and the snapshot
+        try {
+            if (!journal.startCompaction()) {
+                return;
+            }
+            snapshot = catalog;
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+        compactor.execute(() -> {
+            long start = System.nanoTime();
+            List<Product> productSnapshot = snapshot.products().toList();
+            List<FoodProduct> foodProductSnapshot = snapshot.categories().foodProducts();
+            boolean written = updateSnapshotFile(SNAPSHOT_FILE, productSnapshot);
+            journal.finishCompaction(written); //the journal is folded once the snapshot is in place
+            updateProductFile(PRODUCTS_FILE, productSnapshot);
+            updateNutrientTablesFile(NUTRIENT_TABLE_FILE, foodProductSnapshot);
+            metrics.saves.record(System.nanoTime() - start);
+        });
+    }
+
+    /* The flush function waits until every change made so far is written to the journal*/
+    public void flush() {
+        journal.flush();
+    }
+
+    /* The close function is called when the program exits. It waits for a running compaction to finish writing the
+    * files, then writes everything left in the journal and closes it. A compaction that doesn't finish in time is
+    * done again from the journal on the next start. The change feed subscribers are completed once they have been
+    * sent the changes in their buffers, and the metrics are unregistered.*/
+    public void close() {
+        changeFeed.close();
+        changeDelivery.shutdown(); //deliveries already started still finish
+        compactor.shutdown();
+        try {
+            if (!compactor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+                ui.showError("Saving the snapshot took too long, it will be saved again on the next start");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        journal.close();
+        if (metricsName != null) {
+            try {
+                metrics.unregister(metricsName);
+            } catch (JMException e) {
+                ui.showError("Couldn't unregister metrics: " + e.getMessage());
+            }
+        }
+    }
+
+    /* The getMetrics function returns the counts and latencies of the inventory's operations*/
+    public InventoryMetricsMXBean getMetrics() {
+        return metrics;
+    }
+
+    /* The getProductStore function returns the store holding the fields of the products in the lists, for measuring
+    * its memory*/
+    ProductStore getProductStore() {
+        return store;
+    }
+
+    /* The JournalReplayer class applies replayed journal records to the lists, without recording them again*/
+    private class JournalReplayer implements InventoryJournal.Replayer {
+        @Override
+        public void productAdded(Product product) {
+            removeFromLists(product.articleID); //replaces any earlier version
+            addProduct(product);
+        }
+
+        @Override
+        public void productRemoved(int articleID) {
+            removeFromLists(articleID);
+        }
+
+        @Override
+        public void stockChanged(int articleID, int stock) {
+            Product product = searchProduct(articleID);
+            if (product != null) {
+                product.setStock(stock);
+            }
+        }
+
+        @Override
+        public void nutrientTableSet(String serializedNutrients) {
+            FoodProduct.deserializeNutrientValues(serializedNutrients, productIndex, null, ui::showError);
         }
     }
 
     /// List storage functions
-    /// all functions managing the lists <FoodProduct>products and <Products>products
+    /// all functions managing the product list and the indexes kept in sync with it
     ///
-    /*The updateFoodProductsList function clears the food product list, loops through the product list,
-    * checks for FoodProduct objects and adds them to the food product list*/
-    public void updateFoodProductsList() {
-        foodProducts.clear(); //avoid duplicates
-        for (Product product : products) {
-            if (product instanceof FoodProduct) {
-                foodProducts.add((FoodProduct) product); //Cast and add
+    /*The addProduct function takes a product, moves its fields into the product store, stores it in the indexes,
+    * marks its articleID as taken and publishes a catalog snapshot with it. The product must not be shared with
+    * other threads before it is added.*/
+    private void addProduct(Product product) {
+        catalogLock.writeLock().lock();
+        try {
+            catalog = catalog.with(indexProduct(product, DescriptionFile.NOT_IN_FILE));
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    /*The indexProduct function takes a product and where its description is in the store's description file, or
+    * NOT_IN_FILE if the product has its own, and adds it to the store and the indexes, but not to the catalog, so
+    * products added together can be published in one snapshot. Returns the product. Called under the write lock.*/
+    private Product indexProduct(Product product, long description) {
+        store.attach(product, description);
+        product.catalogSequence = ++catalogSequence;
+        productIndex.put(product);
+        if (searchIndex != null) {
+            searchIndex.add(product);
+        } else if (searchIndexBacklog != null) {
+            searchIndexBacklog.add(index -> index.add(product));
+        }
+        articleIDs.markUsed(product.articleID);
+        return product;
+    }
+
+    /*The removeFromLists function takes an integer id, removes the product with that articleID from the indexes,
+    * publishes a catalog snapshot without it, detaches it from the product store and frees the ID. Returns the
+    * removed product or null if there was none.*/
+    private Product removeFromLists(int id) {
+        catalogLock.writeLock().lock();
+        try {
+            Product removed = productIndex.remove(id);
+            if (removed != null) {
+                catalog = catalog.without(removed);
+                if (searchIndex != null) {
+                    searchIndex.remove(removed);
+                } else if (searchIndexBacklog != null) {
+                    searchIndexBacklog.add(index -> index.remove(removed));
+                }
+                articleIDs.release(id); //gap can be reused
+                store.detach(removed); //fields back on the heap for anyone still holding it
             }
+            return removed;
+        } finally {
+            catalogLock.writeLock().unlock();
         }
     }
 
-    /*The searchProduct function takes an integer id, loops through product list and returns product if
-    * a match is found.*/
-    public Product searchProduct(int id) {
-        for (Product product : products) {
-            if (product.articleID == id) {
-                return product;
+    /*The storeNewProduct function takes a newly created product, adds it to the lists and records it in the journal*/
+    private void storeNewProduct(Product product) {
+        long start = System.nanoTime();
+        catalogLock.writeLock().lock(); //recorded before a compaction can take the snapshot
+        try {
+            addProduct(product);
+            journal.recordAdd(product);
+            for (ChangeListener listener : changeListeners) {
+                listener.productAdded(product);
             }
+            if (changeFeed.hasSubscribers()) {
+                changeFeed.publish(new InventoryChange.ProductAdded(product));
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+        metrics.adds.record(System.nanoTime() - start);
+        compactJournal();
+    }
+
+    /*The addChangeListener function takes a ChangeListener to tell about every later change and returns a copy of
+    * the product list as it is when the listener is added. The listener is added and the snapshot taken under the
+    * write lock, so every product added or removed is either already in the copy or reported to the listener
+    * afterwards, never both or neither.*/
+    public List<Product> addChangeListener(ChangeListener listener) {
+        CatalogSnapshot snapshot;
+        catalogLock.writeLock().lock();
+        try {
+            changeListeners.add(listener);
+            snapshot = catalog;
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+        return snapshot.products().toList();
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    /*The getChangeFeed function returns the publisher of every change to the inventory. Subscribing to it directly
+    * gives the changes from then on, use subscribeChanges to get the catalog they apply to as well.*/
+    public Flow.Publisher<InventoryChange> getChangeFeed() {
+        return changeFeed;
+    }
+
+    /*The subscribeChanges function takes a subscriber to the change feed, subscribes it and returns the catalog
+    * snapshot as it is when it subscribed. Both are done under the write lock, like in addChangeListener, so every
+    * product added or removed is either already in the snapshot or sent to the subscriber afterwards, never both
+    * or neither. Stock changes are sent from then on, but the products in the snapshot always show their current
+    * stock, which may already include changes still to be sent. Stock changes may also arrive out of order, see
+    * InventoryChange.StockChanged for how their versions order them.*/
+    public CatalogSnapshot subscribeChanges(Flow.Subscriber<? super InventoryChange> subscriber) {
+        catalogLock.writeLock().lock();
+        try {
+            changeFeed.subscribe(subscriber);
+            return catalog;
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+    }
+
+    /*The stockChanged function takes a product, its stock word from just before a change and its stock after it,
+    * and tells the change listeners and the change feed about it*/
+    private void stockChanged(Product product, long before, int newStock) {
+        for (ChangeListener listener : changeListeners) {
+            listener.stockChanged(product);
+        }
+        if (changeFeed.hasSubscribers()) {
+            changeFeed.publish(new InventoryChange.StockChanged(product, ProductStore.wordStock(before), newStock,
+                    ProductStore.wordVersion(before) + 1));
+        }
+    }
+
+    /*The searchProduct function takes an integer id and returns the product with that articleID from the index,
+    * or null if no match is found.*/
+    public Product searchProduct(int id) {
+        long start = metrics.startLookup();
+        catalogLock.readLock().lock();
+        try {
+            return productIndex.get(id);
+        } finally {
+            catalogLock.readLock().unlock();
+            metrics.lookupDone(start);
         }
-        return null;
     }
 
     /// Listing product flow
-    /// function for applications the list product functionality
+    /// functions for applications the list product functionality
     ///
-    /* The function listProducts uses the UI method showTextWithTitle to display a list of all products
-    * in the Inventory class's product list with articleID, name and stock*/
+    /* The function listProducts uses the UI method showProductPage to display the first page of the products in the
+    * Inventory class's product list with articleID, name and stock*/
     public void listProducts(){
-        String title = "Current stock: ";
-        if (products.isEmpty()){
-            ui.showTextWithTitle(title, "No product information implemented");
+        listProducts(0);
+    }
+
+    /* The function listProducts takes the position of a page in the listing and uses the UI method showProductPage to
+    * display that page. The UI can ask for another page, which is then listed the same way. If there are no products
+    * a message is displayed with showTextWithTitle instead.*/
+    public void listProducts(int offset){
+        ProductPage page = getProductPage(offset, PAGE_SIZE);
+        if (page.total() == 0){
+            ui.showTextWithTitle("Current stock: ", "No product information implemented");
         }else{
-            String show = "";
-            for (Product product : products){
-                show = show.concat("Article ID: " + product.articleID + " " + product.name + " stock: " + product.stock + "\n");
+            ui.showProductPage(page, this::listProducts);
+        }
+    }
+
+    /* The getCatalogSnapshot function returns the latest snapshot of the catalog, for reading several pages or
+    * counts that must agree with each other. It never waits for products being added or removed.*/
+    public CatalogSnapshot getCatalogSnapshot() {
+        return catalog;
+    }
+
+    /* The getProductPage function takes the position of the first product and the largest number of products to
+    * return, and returns that page of the latest catalog snapshot. A position past the end gives the last page. Only
+    * the page is copied, so the cost doesn't depend on the size of the catalog.*/
+    public ProductPage getProductPage(int offset, int pageSize) {
+        return catalog.page(offset, pageSize);
+    }
+
+    /* The getCategoryPage function takes a category name, the position of the first product and the largest number
+    * of products to return, and returns that page of the category's products. Only the category's own products are
+    * gone through, and only up to the end of the page.*/
+    public ProductPage getCategoryPage(String category, int offset, int pageSize) {
+        return catalog.categoryPage(category, offset, pageSize);
+    }
+
+    /* The getCategoryCounts function returns the number of products in each category, without going through the
+    * products*/
+    public Map<String, Integer> getCategoryCounts() {
+        return catalog.categoryCounts();
+    }
+
+    /* The writeProductListing function writes the listing of all products, one row per product, straight to the
+    * passed sink. The rows come from one catalog snapshot, so every product is listed exactly once even if products
+    * are added or removed while a slow sink is written, and no lock is held. The stock shown is the stock when the
+    * row is formatted.*/
+    public void writeProductListing(Appendable out) throws IOException {
+        ProductTree products = catalog.products();
+        StringBuilder rows = new StringBuilder();
+        for (int offset = 0; offset < products.size(); offset += PAGE_SIZE) {
+            rows.setLength(0);
+            for (Product product : products.range(offset, PAGE_SIZE)) {
+                appendListingRow(rows, product);
             }
-            ui.showTextWithTitle(title, show);
+            out.append(rows);
         }
     }
 
+    /* The appendListingRow function adds a product's row in the listing, articleID, name and stock, to the builder*/
+    static void appendListingRow(StringBuilder rows, Product product) {
+        rows.append("Article ID: ").append(product.articleID).append(' ').append(product.getName())
+                .append(" stock: ").append(product.getStock()).append('\n');
+    }
+
+    /// Import catalog - flow
+    /// functions for adding every product of a supplier catalog at once
+    ///
+    /* The startImportFlow function uses UI.promptInput to get the name of a catalog file, imports it and shows the
+    * outcome in one message with showTextWithTitle, listing the rejected rows.*/
+    public void startImportFlow() {
+        ui.promptInput("Catalog file: ", fileName -> {
+            if (fileName == null || fileName.isBlank()) {
+                ui.showError("File name can't be empty");
+                return;
+            }
+            ImportReport report = importCatalog(fileName.trim());
+            ui.showTextWithTitle("Import", report.summary());
+        });
+    }
+
+    /* The importCatalog function takes the name of a catalog file, semicolon separated or CSV, and imports it with
+    * importCatalog below*/
+    public ImportReport importCatalog(String fileName) {
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(fileName),
+                StandardCharsets.UTF_8))) {
+            return importCatalog(in, fileName);
+        } catch (IOException e) {
+            return new ImportReport(fileName, 0, 0, 0, List.of(), e.getMessage());
+        }
+    }
+
+    /* The importCatalog function takes a catalog and a name for it, streams it through the CatalogImporter stages and
+    * adds every valid product to the inventory. Products without an articleID get the lowest free ones, and rows
+    * with an articleID already in use are rejected. All products are added together under the write lock and
+    * recorded in the journal, which is then flushed once. Rejected rows are listed in the returned report instead of
+    * being shown one by one. If the catalog can't be read to the end nothing is added.*/
+    public ImportReport importCatalog(BufferedReader in, String source) {
+        List<Product> staged = new ArrayList<>();
+        ImportReport report = new CatalogImporter(in, source, product -> {
+            if (product.getArticleID() == 0) {
+                product.setArticleID(articleIDs.allocate());
+            } else if (product.getArticleID() < LOWEST_ID) {
+                return "Article ID can't be lower than " + LOWEST_ID;
+            } else if (!articleIDs.tryMarkUsed(product.getArticleID())) {
+                return "Article ID " + product.getArticleID() + " is already in use";
+            }
+            staged.add(product);
+            return null;
+        }).run();
+        if (!report.completed()) {
+            for (Product product : staged) {
+                articleIDs.release(product.getArticleID()); //reserved by the sink
+            }
+            return report;
+        }
+
+        catalogLock.writeLock().lock(); //recorded before a compaction can take the snapshot
+        try {
+            CatalogSnapshot next = catalog;
+            for (Product product : staged) {
+                next = next.with(indexProduct(product, DescriptionFile.NOT_IN_FILE));
+            }
+            catalog = next; //the whole import appears at once
+            journal.recordAdds(staged);
+            for (ChangeListener listener : changeListeners) {
+                listener.productsAdded(staged);
+            }
+            if (changeFeed.hasSubscribers()) {
+                changeFeed.publish(new InventoryChange.ProductsImported(List.copyOf(staged)));
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+        }
+        journal.flush();
+        compactJournal();
+        return report;
+    }
+
     /// Adding product flow
     /// functions relevant to the add product flow in mostly chronological call order
     ///
@@ -172,55 +778,32 @@ public class Inventory {
     }
 
     /*The generatArticleID function returns the value of the lowest avaliable articleID higher than the
-    * LOWEST_ID constant*/
+    * LOWEST_ID constant. The ID isn't taken until the product is stored, so a form that fails validation or is
+    * left never holds on to it.*/
     public int generateArticleID() {
-        int low = LOWEST_ID;
-        if (products.isEmpty()) {
-            return low;
-        }
-        int max=low;
-        //find highest articleID in list
-        for (Product product : products) {
-            if (product.articleID > max) {
-                max = product.articleID;
-            }
-        }
-        //search for gaps(removed products)
-        for (int i=low; i<=max; i++) {
-            if (searchProduct(i)==null){
-                return i;
-            }
-        }
-        //return max+1 if no gaps
-        return max++;
+        return articleIDs.lowestFree();
+    }
+
+    /*The reserveArticleID function takes the ID shown in the add form and takes it, or the lowest free ID if
+    * another product got it since the form was shown. Called once the product is valid and about to be stored.*/
+    private int reserveArticleID(int id) {
+        return articleIDs.tryMarkUsed(id) ? id : articleIDs.allocate();
     }
 
     /*The processAddDetails function takes a String representing category, and integer ID and an object
     * of the supporting input class ProductInputDetails, validates the input and if valid creates a product
-    * using said details. Once a product is created its added to the relevant Inventory list/s and and the
-    * products file is updated. For any object of classes inheriting from the FoodProduct class,
-    * the UI function promptNutrientInfo is called.*/
+    * using said details. Once a product is created its articleID is reserved and it is added to the relevant
+    * Inventory list/s and and recorded in the journal. For any object of classes inheriting from the FoodProduct
+    * class, the UI function promptNutrientInfo is called first, and the product is only stored once its nutrient
+    * table is valid, see storeNewFoodProduct.*/
     private void processAddDetails(String category, int id, ProductInputDetails details) {
-        //validating details
-        if (details == null || details.name == null || details.name.trim().isEmpty()) {
-            ui.showError("Product name can't be empty");
-            return;
-        }
-        if (details.priceStr == null || details.priceStr.trim().isEmpty()) {
-            ui.showError("Product price can't be empty");
-            return;
-        }
-        double price;
-        try {
-            price = Double.parseDouble(details.priceStr);
-        } catch (NumberFormatException e) {
-            ui.showError("Invalid price format");
-            return;
-        }
-        if (details.description == null || details.description.trim().isEmpty()) {
-            ui.showError("Product description can't be empty");
+        //validating details, the same way as a catalog import
+        String error = details == null ? "Product name can't be empty" : details.validate();
+        if (error != null) {
+            ui.showError(error);
             return;
         }
+        double price = Double.parseDouble(details.priceStr);
 
         //add product
         switch (category) {
@@ -231,7 +814,9 @@ public class Inventory {
                 accessory.setDescription(details.description);
                 accessory.setPrice(price);
                 //store
-                products.add(accessory);
+                accessory.setArticleID(reserveArticleID(id));
+                storeNewProduct(accessory);
+                ui.showAddedProduct(accessory);
                 break;
             case "Energy drinks":
                 //create
@@ -239,11 +824,8 @@ public class Inventory {
                 energyDrink.setName(details.name);
                 energyDrink.setDescription(details.description);
                 energyDrink.setPrice(price);
-                //store
-                products.add(energyDrink);
-                ui.promptNutrientInfo(energyDrink, values -> {
-                    processNutrientDetails(values, energyDrink);
-                });
+                //store with nutrient table
+                storeNewFoodProduct(energyDrink, id);
                 break;
             case "Protein bars":
                 //create
@@ -251,11 +833,8 @@ public class Inventory {
                 proteinBar.setName(details.name);
                 proteinBar.setDescription(details.description);
                 proteinBar.setPrice(price);
-                //store
-                products.add(proteinBar);
-                ui.promptNutrientInfo(proteinBar, values -> {
-                    processNutrientDetails(values, proteinBar);
-                });
+                //store with nutrient table
+                storeNewFoodProduct(proteinBar, id);
                 break;
             case "Protein powders":
                 //create
@@ -263,56 +842,167 @@ public class Inventory {
                 proteinPowder.setName(details.name);
                 proteinPowder.setDescription(details.description);
                 proteinPowder.setPrice(price);
-                //store
-                products.add(proteinPowder);
-                ui.promptNutrientInfo(proteinPowder, values -> {
-                    processNutrientDetails(values, proteinPowder);
-                });
+                //store with nutrient table
+                storeNewFoodProduct(proteinPowder, id);
                 break;
             default:
                 ui.showError("Invalid category");
         }
-        updateProductFile(PRODUCTS_FILE);
-        updateFoodProductsList();
     }
 
 
+    /*The storeNewFoodProduct function takes a new food product and the articleID shown in the add form, and
+    * prompts for its nutrient table with the UI function promptNutrientInfo. The product is stored with the table
+    * once the values are valid, or without one if the UI passes null to leave it out, so invalid values leave
+    * nothing half added and the form can be corrected and submitted again. Submitting the form again after the
+    * product is stored sets a new nutrient table, like processNutrientDetails.*/
+    private void storeNewFoodProduct(FoodProduct foodProduct, int id) {
+        AtomicBoolean stored = new AtomicBoolean(); //the prompt can answer more than once
+        ui.promptNutrientInfo(foodProduct, values -> {
+            if (stored.get()) {
+                processNutrientDetails(values, foodProduct);
+                return;
+            }
+            if (values != null && !setNutrientTable(values, foodProduct)) {
+                return;
+            }
+            foodProduct.setArticleID(reserveArticleID(id));
+            storeNewProduct(foodProduct); //the journal record holds the nutrient table
+            stored.set(true);
+            ui.showAddedProduct(foodProduct);
+        });
+    }
+
     /*The function processNutrientDetails take NutrientTableValues object and a FoodProduct object as
-    * arguments, parses them to integer and sets the FoodProducts nutrientTable LinkedHashMap attribute
-    * using the parsed values. The function handles objects of EnergyDrink class seperately from other
-    * FoodProduct object as the energyDrink objects have an extra element for caffeine */
+    * arguments, and sets the FoodProducts nutrient table using the values, see setNutrientTable. A valid table is
+    * recorded in the journal. */
     public void processNutrientDetails(NutrientTableValues values, FoodProduct foodProduct) {
-        //validate and set energydrink nutrient tables
-        if (foodProduct instanceof EnergyDrink) {
-            try {
-                int kcal = Integer.parseInt(values.kcalString);
-                int fat = Integer.parseInt(values.fatString);
-                int carbs = Integer.parseInt(values.carbsString);
-                int protein = Integer.parseInt(values.proteinString);
+        if (setNutrientTable(values, foodProduct)) {
+            journal.recordNutrientTable(foodProduct);
+            nutrientTableSet(foodProduct);
+        }
+        compactJournal();
+    }
+
+    /*The function setNutrientTable take NutrientTableValues object and a FoodProduct object as arguments, parses
+    * them to integer and sets the FoodProducts nutrient table using the parsed values. The function handles objects
+    * of EnergyDrink class seperately from other FoodProduct object as the energyDrink objects have an extra element
+    * for caffeine. Returns false, showing the error, if a value is missing or not a number.*/
+    private boolean setNutrientTable(NutrientTableValues values, FoodProduct foodProduct) {
+        try {
+            int kcal = Integer.parseInt(values.kcalString);
+            int fat = Integer.parseInt(values.fatString);
+            int carbs = Integer.parseInt(values.carbsString);
+            int protein = Integer.parseInt(values.proteinString);
+            //validate and set energydrink nutrient tables
+            if (foodProduct instanceof EnergyDrink) {
                 int caffeine = Integer.parseInt(values.caffeineString);
                 ((EnergyDrink) foodProduct).setNutrientTable(kcal, fat, carbs, protein, caffeine);
+            } else { //validate and set nutrient tables for other food objects
+                foodProduct.setNutrientTable(kcal, fat, carbs, protein);
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            ui.showError("Invalid input format: " + e.getMessage());
+        } catch (NullPointerException e) {
+            ui.showError(e.getMessage());
+        }
+        return false;
+    }
+
+    /*The nutrientTableSet function tells the change feed that the food product got a new nutrient table*/
+    private void nutrientTableSet(FoodProduct foodProduct) {
+        if (changeFeed.hasSubscribers()) {
+            changeFeed.publish(new InventoryChange.NutrientTableSet(foodProduct));
+        }
+    }
+
 
-            } catch (NumberFormatException e) {
-                ui.showError("Invalid input format: " + e.getMessage());
-            } catch (NullPointerException e) {
-                ui.showError(e.getMessage());
+    /// Search - flow
+    /// functions for finding products by words in their name and description
+    ///
+    /* The startSearchFlow function uses UI.promptInput to get the words to search for and shows the best matching
+    * products with the UI function showSearchResults. Choosing one of them shows its product information.*/
+    public void startSearchFlow() {
+        ui.promptInput("Search: ", query -> {
+            if (query == null || query.isBlank()) {
+                ui.showError("Search can't be empty");
+                return;
+            }
+            List<Product> results = searchProducts(query, SEARCH_LIMIT);
+            if (results.isEmpty()) {
+                ui.showError("No products found");
+            } else {
+                ui.showSearchResults(query, results, this::showProductInfo);
             }
-        } else { //validate and set nutrient tables for other food objects
+        });
+    }
+
+    /* The searchProducts function takes a query and the largest number of results, and returns the products with
+    * every word of the query in their name or description, or words starting with them, best match first. The
+    * search index is built the first time, which takes a moment for a large catalog, so that loading the inventory
+    * doesn't have to, see buildSearchIndex.*/
+    public List<Product> searchProducts(String query, int limit) {
+        while (true) {
+            catalogLock.readLock().lock();
             try {
-                int kcal = Integer.parseInt(values.kcalString);
-                int fat = Integer.parseInt(values.fatString);
-                int carbs = Integer.parseInt(values.carbsString);
-                int protein = Integer.parseInt(values.proteinString);
-                foodProduct.setNutrientTable(kcal, fat, carbs, protein);
-            } catch (NumberFormatException e) {
-                ui.showError("Invalid input format: " + e.getMessage());
-            } catch (NullPointerException e) {
-                ui.showError(e.getMessage());
+                if (searchIndex != null) {
+                    return productsWithIDs(searchIndex.search(query, limit));
+                }
+            } finally {
+                catalogLock.readLock().unlock();
             }
+            buildSearchIndex();
         }
-        updateNutrientTablesFile(NUTRIENT_TABLE_FILE);
     }
 
+    /* The buildSearchIndex function builds the search index from the current catalog snapshot without holding the
+    * catalog lock, so lookups and stock changes go on meanwhile. Products added and removed while it is built are
+    * kept in searchIndexBacklog and applied to the new index under the write lock, just before it is put in place.
+    * Other searches arriving meanwhile wait for this build instead of starting their own.*/
+    private void buildSearchIndex() {
+        synchronized (searchIndexBuild) {
+            CatalogSnapshot snapshot;
+            List<Consumer<SearchIndex>> backlog = new ArrayList<>();
+            catalogLock.writeLock().lock();
+            try {
+                if (searchIndex != null) { //built while this thread waited
+                    return;
+                }
+                snapshot = catalog;
+                searchIndexBacklog = backlog;
+            } finally {
+                catalogLock.writeLock().unlock();
+            }
+            SearchIndex index = new SearchIndex();
+            boolean built = false;
+            try {
+                snapshot.products().forEach(index::add);
+                built = true;
+            } finally {
+                catalogLock.writeLock().lock();
+                try {
+                    if (built) {
+                        for (Consumer<SearchIndex> change : backlog) {
+                            change.accept(index);
+                        }
+                        searchIndex = index;
+                    }
+                    searchIndexBacklog = null; //stop collecting changes, also if the build failed
+                } finally {
+                    catalogLock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    private List<Product> productsWithIDs(int[] ids) {
+        List<Product> found = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            found.add(productIndex.get(id));
+        }
+        return found;
+    }
 
     /// Show product info - flow
     /// all functions handeling the product info - flow
@@ -356,14 +1046,27 @@ public class Inventory {
     }
 
     /* The function removeProduct takes an integer ID and removes an object with this article ID from the list/s
-    * product and foodProducts if they contain such an object. The function then calls updateProductFile and
-    * updatesNutrientTableFile to account for any discrepencies between file and lists.*/
+    * product and the indexes if they contain such an object. The removal is then recorded in the journal.*/
     public void removeProduct(int id){
-        products.removeIf(product -> product.articleID == id);
-        foodProducts.removeIf(foodProduct -> foodProduct.articleID == id);
-        updateProductFile(PRODUCTS_FILE);
-        updateNutrientTablesFile(NUTRIENT_TABLE_FILE);
-
+        long start = System.nanoTime();
+        catalogLock.writeLock().lock(); //recorded before a compaction can take the snapshot
+        try {
+            Product removed = removeFromLists(id);
+            if (removed == null) {
+                return;
+            }
+            journal.recordRemove(id);
+            for (ChangeListener listener : changeListeners) {
+                listener.productRemoved(removed);
+            }
+            if (changeFeed.hasSubscribers()) {
+                changeFeed.publish(new InventoryChange.ProductRemoved(removed));
+            }
+        } finally {
+            catalogLock.writeLock().unlock();
+            metrics.removes.record(System.nanoTime() - start);
+        }
+        compactJournal();
     }
 
     /// Increase and decrease stock - flow
@@ -374,15 +1077,19 @@ public class Inventory {
     * function on success*/
     public void userIncreaseStock(int id, Runnable onSuccess){
         if (id==0 || searchProduct(id)==null){
-            ui.showError("Product not found");
-            userIncreaseStock(id, onSuccess);
+            ui.showProductNotFound(id);
         }
         else {
             ui.promptInput("Quantity: ", quantityString -> {
                 try {
                     int quantity = Integer.parseInt(quantityString);
-                    increaseStock(id, quantity);
-                    onSuccess.run();
+                    if (quantity <= 0) {
+                        ui.showError("Quantity must be positive");
+                        return;
+                    }
+                    if (increaseStock(id, quantity)) {
+                        onSuccess.run();
+                    }
                 } catch (NumberFormatException e) {
                     ui.showError("Invalid quantity");
                     userIncreaseStock(id, onSuccess);
@@ -396,12 +1103,15 @@ public class Inventory {
      * function on success*/
     public void userDecreaseStock(int id,  Runnable onSuccess){
         if (id==0 || searchProduct(id)==null){
-            ui.showError("Product not found");
-            userIncreaseStock(id, onSuccess);
+            ui.showProductNotFound(id);
         }else{
             ui.promptInput("Quantity: ", quantityString -> {
                 try {
                     int quantity = Integer.parseInt(quantityString);
+                    if (quantity <= 0) {
+                        ui.showError("Quantity must be positive");
+                        return;
+                    }
                     if(decreaseStock(id, quantity)){
                         onSuccess.run();
                     }
@@ -415,23 +1125,241 @@ public class Inventory {
     }
 
 
+    /*The adjustStock function takes a batch of stock adjustments, like a received delivery or a day's sales, and
+    * applies all of them or none. Adjustments for the same product are added together first. Every product is
+    * checked to exist and have enough stock, and all problems are reported in one error. The decreases are then
+    * applied before the increases, and if a change fails because another thread changed the stock in the meantime,
+    * the changes already made are put back and nothing is recorded. The new stock of every product is written to
+    * the journal in one write. Returns true if the batch was applied.*/
+    public boolean adjustStock(List<StockAdjustment> batch) {
+        InventoryEvents.StockAdjustmentBatch event = new InventoryEvents.StockAdjustmentBatch();
+        event.begin();
+        long start = System.nanoTime();
+        boolean applied = false;
+        try {
+            applied = applyStockAdjustments(batch);
+            return applied;
+        } finally {
+            metrics.batchAdjustments.record(System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                StringJoiner ids = new StringJoiner(",");
+                for (StockAdjustment adjustment : batch) {
+                    ids.add(String.valueOf(adjustment.articleID()));
+                }
+                event.adjustments = batch.size();
+                event.articleIDs = ids.toString();
+                event.applied = applied;
+                event.commit();
+            }
+        }
+    }
+
+    private boolean applyStockAdjustments(List<StockAdjustment> batch) {
+        Map<Product, Long> changes = new LinkedHashMap<>(); //added up per product
+        Map<Product, Long> oldStocks = new LinkedHashMap<>(); //stock words before each change, for the change feed
+        String error;
+        //held until the new stocks are recorded, so no product of the batch is removed in between. The error is
+        //shown after unlocking, since a UI may wait for the user to close it.
+        catalogLock.readLock().lock();
+        try {
+            error = changeStocks(batch, changes, oldStocks);
+        } finally {
+            catalogLock.readLock().unlock();
+        }
+        if (error != null) {
+            ui.showError(error);
+        }
+        publishStockChanges(changes, oldStocks);
+        if (error != null) {
+            return false;
+        }
+        compactJournal();
+        return true;
+    }
+
+    /*The changeStocks function adds up the changes of a batch per product, checks them and applies them, and
+    * records the new stocks in the journal. Returns null if the batch was applied, otherwise why it wasn't. The
+    * stock words from before the changes left applied are put in oldStocks.*/
+    private String changeStocks(List<StockAdjustment> batch, Map<Product, Long> changes,
+                                Map<Product, Long> oldStocks) {
+        StringBuilder problems = new StringBuilder();
+        for (StockAdjustment adjustment : batch) {
+            Product product = searchProduct(adjustment.articleID());
+            if (product == null) {
+                problems.append("Product not found: ").append(adjustment.articleID()).append("\n");
+            } else {
+                changes.merge(product, (long) adjustment.delta(), Long::sum);
+            }
+        }
+        //check against current stock
+        for (Map.Entry<Product, Long> change : changes.entrySet()) {
+            long newStock = change.getKey().getStock() + change.getValue();
+            if (newStock < 0) {
+                problems.append("Not enough stock for article ").append(change.getKey().articleID).append("\n");
+                metrics.failedDecrease();
+            } else if (newStock > Integer.MAX_VALUE) {
+                problems.append("Stock too high for article ").append(change.getKey().articleID).append("\n");
+            }
+        }
+        if (problems.length() > 0) {
+            return problems.toString().trim();
+        }
+
+        //decreases first, they are the ones that usually fail
+        List<Product> order = new ArrayList<>(changes.size());
+        for (Map.Entry<Product, Long> change : changes.entrySet()) {
+            if (change.getValue() < 0) {
+                order.add(change.getKey());
+            }
+        }
+        for (Map.Entry<Product, Long> change : changes.entrySet()) {
+            if (change.getValue() > 0) {
+                order.add(change.getKey());
+            }
+        }
+        for (Product product : order) {
+            long delta = changes.get(product);
+            long oldStock = delta < 0 ? product.removeStock((int) -delta) : product.addStock((int) delta);
+            if (oldStock == ProductStore.REFUSED) { //another thread changed the stock since the check
+                putBack(changes, oldStocks);
+                if (delta < 0) {
+                    metrics.failedDecrease();
+                    return "Not enough stock for article " + product.articleID;
+                }
+                return "Stock too high for article " + product.articleID;
+            }
+            oldStocks.put(product, oldStock);
+        }
+        journal.recordStocks(changes.keySet());
+        return null;
+    }
+
+    /*The putBack function takes back the changes of a batch that failed part way. A change that can't be taken
+    * back, because another thread has already used the stock it added, stays applied: it is recorded in the journal
+    * and left in oldStocks to be published. The others are removed from oldStocks.*/
+    private void putBack(Map<Product, Long> changes, Map<Product, Long> oldStocks) {
+        Iterator<Product> applied = oldStocks.keySet().iterator();
+        while (applied.hasNext()) {
+            Product product = applied.next();
+            long delta = changes.get(product);
+            if (delta < 0 ? product.tryAddStock((int) -delta) : product.tryRemoveStock((int) delta)) {
+                applied.remove();
+            }
+        }
+        if (!oldStocks.isEmpty()) {
+            journal.recordStocks(oldStocks.keySet());
+        }
+    }
+
+    /*The publishStockChanges function tells the listeners and the change feed about the changes of a batch that
+    * stayed applied, given the stock words from just before them*/
+    private void publishStockChanges(Map<Product, Long> changes, Map<Product, Long> oldStocks) {
+        for (Map.Entry<Product, Long> oldStock : oldStocks.entrySet()) {
+            Product product = oldStock.getKey();
+            stockChanged(product, oldStock.getValue(),
+                    ProductStore.wordStock(oldStock.getValue()) + (int) (long) changes.get(product));
+        }
+    }
+
     /*The increaseStock function takes two integers, ID and quantity, searches for such a product in
-    * products list, add increases its stock by the passed quantity*/
-    private void increaseStock (int id, int quantity){
-        searchProduct(id).stock += quantity;
+    * products list, add atomically increases its stock by the passed quantity and records the new stock in the
+    * journal. Returns false if the stock couldn't be increased, or the product was removed since the caller looked
+    * it up.*/
+    private boolean increaseStock (int id, int quantity){
+        InventoryEvents.StockChange event = new InventoryEvents.StockChange();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            Product product;
+            long before = ProductStore.REFUSED;
+            //held until the stock is recorded, so the product isn't removed in between, see applyStockAdjustments
+            catalogLock.readLock().lock();
+            try {
+                product = searchProduct(id);
+                if (product != null) {
+                    before = product.addStock(quantity);
+                    if (before != ProductStore.REFUSED) {
+                        journal.recordStock(product);
+                    }
+                }
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+            if (product == null) { //removed by another thread meanwhile
+                ui.showProductNotFound(id);
+                return false;
+            }
+            if (before == ProductStore.REFUSED) {
+                ui.showError("Stock can't be increased by " + quantity);
+                commitStockEvent(event, product, quantity, product.getStock(), false);
+                return false;
+            }
+            int oldStock = ProductStore.wordStock(before);
+            stockChanged(product, before, oldStock + quantity);
+            compactJournal();
+            commitStockEvent(event, product, quantity, oldStock + quantity, true);
+            return true;
+        } finally {
+            metrics.stockIncreases.record(System.nanoTime() - start);
+        }
     }
 
     /*The decreaseStock function takes two integers, ID and quantity, searches for such a product in
-     * products list, add if stock is sufficient, decreases its stock by the passed quantity*/
+     * products list, add if stock is sufficient, atomically decreases its stock by the passed quantity and records
+     * the new stock in the journal. Checking and decreasing is one compare-and-set, so two threads can never both
+     * take the last items. Returns false if there wasn't enough stock, or the product was removed since the caller
+     * looked it up.*/
     private boolean decreaseStock(int id, int quantity){
-        boolean result = false;
-        if (searchProduct(id).stock < quantity){
-            ui.showError("Not enough stock");
+        InventoryEvents.StockChange event = new InventoryEvents.StockChange();
+        event.begin();
+        long start = System.nanoTime();
+        try {
+            Product product;
+            long before = ProductStore.REFUSED;
+            //held until the stock is recorded, so the product isn't removed in between, see applyStockAdjustments
+            catalogLock.readLock().lock();
+            try {
+                product = searchProduct(id);
+                if (product != null) {
+                    before = product.removeStock(quantity);
+                    if (before != ProductStore.REFUSED) {
+                        journal.recordStock(product);
+                    }
+                }
+            } finally {
+                catalogLock.readLock().unlock();
+            }
+            if (product == null) { //removed by another thread meanwhile
+                ui.showProductNotFound(id);
+                return false;
+            }
+            if (before == ProductStore.REFUSED) {
+                ui.showError("Not enough stock");
+                metrics.failedDecrease();
+                commitStockEvent(event, product, -quantity, product.getStock(), false);
+                return false;
+            }
+            int oldStock = ProductStore.wordStock(before);
+            stockChanged(product, before, oldStock - quantity);
+            compactJournal();
+            commitStockEvent(event, product, -quantity, oldStock - quantity, true);
+            return true;
+        } finally {
+            metrics.stockDecreases.record(System.nanoTime() - start);
         }
-        else {
-            searchProduct(id).stock -= quantity;
-            result = true;
+    }
+
+    /* The commitStockEvent function fills in and commits a flight recorder event for a stock change, if a recording
+    * has the event enabled. The stock after is the one this change left, not read again here, where other threads
+    * may already have changed it. For a refused change it is the unchanged stock read right after the refusal.*/
+    private static void commitStockEvent(InventoryEvents.StockChange event, Product product, int delta,
+                                         int stockAfter, boolean applied) {
+        if (event.shouldCommit()) {
+            event.articleID = product.getArticleID();
+            event.delta = delta;
+            event.stock = stockAfter;
+            event.applied = applied;
+            event.commit();
         }
-        return result;
     }
 }
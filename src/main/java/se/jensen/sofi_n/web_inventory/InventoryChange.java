@@ -0,0 +1,39 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.util.List;
+
+/// The InventoryChange interface is one change to the Inventory, as delivered to the subscribers of its ChangeFeed.
+/// The products in the changes are the live Product objects, so reading a field gives its current value and not the
+/// one at the time of the change, except for the stock values carried by StockChanged.
+///
+public sealed interface InventoryChange {
+
+    /// A product was added to the catalog
+    record ProductAdded(Product product) implements InventoryChange {
+    }
+
+    /// The products of an import were added to the catalog at once, in catalog order. Sent as one change, so an
+    /// import larger than a subscriber's buffer doesn't overflow it.
+    record ProductsImported(List<Product> products) implements InventoryChange {
+    }
+
+    /// A product was removed from the catalog
+    record ProductRemoved(Product product) implements InventoryChange {
+    }
+
+    /// The stock of a product went from oldStock to newStock, in one change made by one thread.
+    ///
+    /// Each thread publishes its own change after making it, so two changes to one product made at nearly the same
+    /// time can arrive in the other order, 6 to 7 before 5 to 6. The version puts them back in order: every change
+    /// of a product's stock gets a version one higher than the change before it, in the order the changes were made.
+    /// Versions can skip numbers, for stock changes that aren't sent, like the ones an adjustment that failed put
+    /// back. A subscriber keeping the stock should keep the newStock of the highest version it has seen for the
+    /// product. Versions wrap around, so a version is newer than a seen one if version - seen is positive.
+    record StockChanged(Product product, int oldStock, int newStock, int version) implements InventoryChange {
+    }
+
+    /// A food product in the catalog was given a new nutrient table. A product added with a table is only sent as
+    /// ProductAdded.
+    record NutrientTableSet(FoodProduct product) implements InventoryChange {
+    }
+}
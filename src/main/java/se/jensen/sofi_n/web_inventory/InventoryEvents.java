@@ -0,0 +1,99 @@
+package se.jensen.sofi_n.web_inventory;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/// The InventoryEvents class holds the Java Flight Recorder events of the inventory, so a slow start or a stalled
+/// save can be lined up with garbage collection, I/O and thread activity in the same recording.
+///
+/// All events are disabled by default. A disabled event is never committed and the JIT removes the unused event
+/// object, so they cost nothing until a recording enables them, for example with the bundled profile:
+///   java -XX:StartFlightRecording:settings=default,settings=src/main/resources/inventory.jfc,filename=inventory.jfr
+///
+/// The fields are only filled in when shouldCommit returns true, so nothing extra is computed while disabled.
+///
+public class InventoryEvents {
+    /// File load
+    @Name("se.jensen.sofi_n.web_inventory.FileLoad")
+    @Label("Inventory File Load")
+    @Description("Reading the products file, the nutrient tables file or the binary snapshot")
+    @Category({"Web Inventory", "Files"})
+    @Enabled(false)
+    @StackTrace(false)
+    static class FileLoad extends Event {
+        @Label("File")
+        String fileName;
+
+        @Label("Records")
+        int records;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytes;
+    }
+
+    /// File save
+    @Name("se.jensen.sofi_n.web_inventory.FileSave")
+    @Label("Inventory File Save")
+    @Description("Writing the products file, the nutrient tables file or the binary snapshot")
+    @Category({"Web Inventory", "Files"})
+    @Enabled(false)
+    @StackTrace(false)
+    static class FileSave extends Event {
+        @Label("File")
+        String fileName;
+
+        @Label("Records")
+        int records;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytes;
+
+        @Label("Saved")
+        boolean saved;
+    }
+
+    /// Stock change
+    @Name("se.jensen.sofi_n.web_inventory.StockChange")
+    @Label("Stock Change")
+    @Description("Increasing or decreasing the stock of one product")
+    @Category({"Web Inventory", "Stock"})
+    @Enabled(false)
+    static class StockChange extends Event {
+        @Label("Article ID")
+        int articleID;
+
+        @Label("Change")
+        int delta;
+
+        @Label("Stock After")
+        int stock;
+
+        @Label("Applied")
+        boolean applied;
+    }
+
+    /// Stock adjustment
+    @Name("se.jensen.sofi_n.web_inventory.StockAdjustment")
+    @Label("Stock Adjustment Batch")
+    @Description("Applying a batch of stock adjustments all or nothing")
+    @Category({"Web Inventory", "Stock"})
+    @Enabled(false)
+    static class StockAdjustmentBatch extends Event {
+        @Label("Adjustments")
+        int adjustments;
+
+        @Label("Article IDs")
+        String articleIDs;
+
+        @Label("Applied")
+        boolean applied;
+    }
+}
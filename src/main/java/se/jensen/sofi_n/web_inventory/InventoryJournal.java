@@ -0,0 +1,351 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/// The InventoryJournal class is an append-only log of every change made to the inventory since the product and
+/// nutrient table files were last written. Instead of rewriting the whole products file on each change, the Inventory
+/// class appends one short line per change here, and on startup the lines are replayed on top of the files.
+///
+/// Each record is a type followed by semicolon separated values:
+///   ADD;<serialized product>    REMOVE;<articleID>    STOCK;<articleID>;<stock>    NUTRIENTS;<serialized nutrients>
+/// Stock records hold the resulting stock rather than the change, so replaying a record twice gives the same result.
+///
+/// Records are not written by the thread recording them. They are queued and written by the journal's own writer
+/// thread, which waits a few milliseconds after the first queued record so that all records made meanwhile are
+/// written and flushed together as one write. Only the writer thread touches the journal files. Changes made in the
+/// last few milliseconds before the program is killed can be lost, flush and close write everything queued.
+///
+/// Compaction folds the journal into new snapshot files. startCompaction moves the current journal aside so new
+/// records go into a fresh one, the Inventory class writes its snapshot, and finishCompaction deletes the moved
+/// journal. If the program stops before that, the moved journal is simply replayed again on the next startup.
+///
+public class InventoryJournal {
+    /// Attributes
+    private static final int COMPACTION_THRESHOLD = 10000; //records before compaction is suggested
+    private static final long COALESCE_MILLIS = 10; //how long records are collected before they are written
+    private final File JOURNAL_FILE;
+    private final File COMPACTING_FILE; //journal being folded into the snapshot
+    private final Consumer<String> onError;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "journal-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private PrintWriter out; //only used on the writer thread, after replay
+    private final StringBuilder pending = new StringBuilder(); //records waiting for the writer
+    private boolean writeScheduled = false;
+    private boolean closed = false;
+    private int recordCount = 0;
+    private boolean compactionRunning = false;
+    private boolean leftoverJournal = false; //moved journal from a compaction that didn't finish
+
+    /// Replay handler
+    /// actions for the Inventory class to perform on each replayed record
+    public interface Replayer {
+        void productAdded(Product product);
+        void productRemoved(int articleID);
+        void stockChanged(int articleID, int stock);
+        void nutrientTableSet(String serializedNutrients);
+    }
+
+    /// Constructor
+    /*The constructor takes the name of the products file, which the journal files are named after, and a Consumer
+    * String type with actions to perform on any error messages*/
+    public InventoryJournal(String productFileName, Consumer<String> onError) {
+        this.JOURNAL_FILE = new File(productFileName + ".journal");
+        this.COMPACTING_FILE = new File(productFileName + ".journal.compacting");
+        this.onError = onError;
+    }
+
+    /// Startup
+    /*The replay function reads any journal left from an unfinished compaction followed by the current journal,
+    * passes each record to the Replayer and then opens the journal for appending. Returns the number of records
+    * replayed.*/
+    public synchronized int replay(Replayer replayer) {
+        int replayed = 0;
+        if (COMPACTING_FILE.exists()) {
+            replayed += replayFile(COMPACTING_FILE, replayer);
+            leftoverJournal = true; //gets folded by the next compaction
+        }
+        if (JOURNAL_FILE.exists()) {
+            recordCount = replayFile(JOURNAL_FILE, replayer);
+            replayed += recordCount;
+        }
+        try {
+            out = new PrintWriter(new BufferedWriter(new FileWriter(JOURNAL_FILE, true))); //append mode
+        } catch (IOException e) {
+            onError.accept("Couldn't open journal: " + e.getMessage());
+        }
+        return replayed;
+    }
+
+    /*The replayFile function reads a journal file line by line and passes each record to the Replayer*/
+    private int replayFile(File file, Replayer replayer) {
+        int count = 0;
+        try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    replayRecord(line, replayer);
+                    count++;
+                }
+            }
+        } catch (IOException e) {
+            onError.accept("Couldn't read journal: " + e.getMessage());
+        }
+        return count;
+    }
+
+    /*The replayRecord function splits off the record type and passes the values to the matching Replayer action*/
+    private void replayRecord(String line, Replayer replayer) {
+        int split = line.indexOf(';');
+        String type = split < 0 ? line : line.substring(0, split);
+        String values = split < 0 ? "" : line.substring(split + 1);
+        try {
+            switch (type) {
+                case "ADD":
+                    Product product = Product.deserialize(values, onError);
+                    if (product != null) {
+                        replayer.productAdded(product);
+                    }
+                    break;
+                case "REMOVE":
+                    replayer.productRemoved(Integer.parseInt(values));
+                    break;
+                case "STOCK":
+                    int stockSplit = values.indexOf(';');
+                    replayer.stockChanged(Integer.parseInt(values.substring(0, stockSplit)),
+                            Integer.parseInt(values.substring(stockSplit + 1)));
+                    break;
+                case "NUTRIENTS":
+                    replayer.nutrientTableSet(values);
+                    break;
+                default:
+                    onError.accept("Unknown journal record: " + line);
+            }
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            onError.accept("Incorrect journal record: " + line);
+        }
+    }
+
+    /// Recording changes
+    /// each function queues one record for the writer thread
+    ///
+    /*The recordAdd function records the product and, for a food product added with one, its nutrient table*/
+    public synchronized void recordAdd(Product product) {
+        append("ADD;" + product.serialize());
+        if (product instanceof FoodProduct foodProduct && foodProduct.nutrientCount() > 0) {
+            append("NUTRIENTS;" + foodProduct.serializeNutrientValues());
+        }
+    }
+
+    public void recordRemove(int articleID) {
+        append("REMOVE;" + articleID);
+    }
+
+    /*The recordStock function reads the stock while holding the journal lock, so when several threads change the same
+    * stock, the last record written always holds the latest stock*/
+    public synchronized void recordStock(Product product) {
+        append("STOCK;" + product.articleID + ";" + product.getStock());
+    }
+
+    public void recordNutrientTable(FoodProduct foodProduct) {
+        append("NUTRIENTS;" + foodProduct.serializeNutrientValues());
+    }
+
+    /*The recordStocks function records the stock of every product in the collection, all queued at once so they are
+    * written together*/
+    public synchronized void recordStocks(Iterable<Product> changed) {
+        for (Product product : changed) {
+            append("STOCK;" + product.articleID + ";" + product.getStock());
+        }
+    }
+
+    /*The recordAdds function records every product in the collection and the nutrient tables of the food products,
+    * all queued at once so they are written together*/
+    public synchronized void recordAdds(Iterable<Product> added) {
+        for (Product product : added) {
+            append("ADD;" + product.serialize());
+            if (product instanceof FoodProduct foodProduct && foodProduct.nutrientCount() > 0) {
+                append("NUTRIENTS;" + foodProduct.serializeNutrientValues());
+            }
+        }
+    }
+
+    /*The append function queues one record line and makes sure the writer thread will write it shortly. Records are
+    * queued in the order the journal lock is taken, which is the order they are written in.*/
+    private synchronized void append(String record) {
+        if (closed) {
+            onError.accept("Couldn't save: journal is closed");
+            return;
+        }
+        pending.append(record).append(System.lineSeparator());
+        recordCount++;
+        if (!writeScheduled) {
+            writeScheduled = true;
+            writer.schedule(this::writePending, COALESCE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /*The writePending function runs on the writer thread and writes every queued record to the journal with a single
+    * flush*/
+    private void writePending() {
+        String batch;
+        synchronized (this) {
+            writeScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending.toString();
+            pending.setLength(0);
+        }
+        if (out == null) {
+            onError.accept("Couldn't save: journal is not open");
+            return;
+        }
+        out.write(batch);
+        out.flush();
+        if (out.checkError()) {
+            onError.accept("Couldn't save: writing to journal failed");
+        }
+    }
+
+    /*The flush function writes everything queued so far and waits until it is written*/
+    public void flush() {
+        onWriter(() -> {
+            writePending();
+            return null;
+        });
+    }
+
+    /*The onWriter function runs a task on the writer thread, after everything queued before it, and waits for its
+    * result. Returns null if the task failed or the journal is closed.*/
+    private <T> T onWriter(Callable<T> task) {
+        try {
+            return writer.submit(task).get();
+        } catch (RejectedExecutionException e) {
+            onError.accept("Couldn't save: journal is closed");
+        } catch (ExecutionException e) {
+            onError.accept("Couldn't save: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            onError.accept("Couldn't save: interrupted while waiting for the journal");
+        }
+        return null;
+    }
+
+    /// Compaction
+    /*The needsCompaction function returns true when no compaction is running and the journal has grown past the
+    * threshold or an earlier compaction was left unfinished*/
+    public synchronized boolean needsCompaction() {
+        return !compactionRunning && (recordCount >= COMPACTION_THRESHOLD || leftoverJournal);
+    }
+
+    /*The startCompaction function moves the current journal aside and opens a fresh one, so that the snapshot the
+    * caller takes right after covers everything in the moved journal. Queued records are written to the journal
+    * before it is moved. If a journal from an unfinished compaction is still there, the current records are added
+    * to the end of it instead. Returns false if the journal couldn't be moved or a compaction is already running.*/
+    public boolean startCompaction() {
+        synchronized (this) {
+            if (compactionRunning) {
+                return false;
+            }
+            compactionRunning = true; //no other compaction starts while the writer moves the journal
+        }
+        Boolean started = onWriter(this::moveJournal);
+        synchronized (this) {
+            if (started == null || !started) {
+                compactionRunning = false;
+                return false;
+            }
+            leftoverJournal = false;
+            recordCount = 0;
+            return true;
+        }
+    }
+
+    /*The moveJournal function runs on the writer thread, writes the queued records and moves the journal aside as
+    * described in startCompaction, then opens a fresh journal. Returns true if it was moved.*/
+    private boolean moveJournal() {
+        writePending();
+        boolean appendToLeftover;
+        synchronized (this) {
+            appendToLeftover = leftoverJournal;
+        }
+        try {
+            if (out != null) {
+                out.close();
+            }
+            if (appendToLeftover) {
+                if (JOURNAL_FILE.exists()) {
+                    Files.write(COMPACTING_FILE.toPath(), Files.readAllBytes(JOURNAL_FILE.toPath()),
+                            StandardOpenOption.APPEND);
+                    Files.delete(JOURNAL_FILE.toPath());
+                }
+            } else if (JOURNAL_FILE.exists()) {
+                Files.move(JOURNAL_FILE.toPath(), COMPACTING_FILE.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            return true;
+        } catch (IOException e) {
+            onError.accept("Couldn't compact journal: " + e.getMessage());
+            return false;
+        } finally {
+            try {
+                out = new PrintWriter(new BufferedWriter(new FileWriter(JOURNAL_FILE, true)));
+            } catch (IOException e) {
+                out = null;
+                onError.accept("Couldn't open journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /*The finishCompaction function is called once the snapshot is safely written and deletes the moved journal.
+    * On failure the moved journal is kept, so its records are replayed and folded again later.*/
+    public void finishCompaction(boolean snapshotWritten) {
+        Boolean deleted = snapshotWritten ? onWriter(() -> {
+            try {
+                Files.deleteIfExists(COMPACTING_FILE.toPath());
+                return true;
+            } catch (IOException e) {
+                onError.accept("Couldn't delete compacted journal: " + e.getMessage());
+                return false;
+            }
+        }) : Boolean.FALSE;
+        synchronized (this) {
+            if (deleted == null || !deleted) {
+                leftoverJournal = true;
+            }
+            compactionRunning = false;
+        }
+    }
+
+    /*The close function writes everything queued, closes the journal file and stops the writer thread. Records made
+    * after closing are reported as errors.*/
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        onWriter(() -> {
+            writePending();
+            if (out != null) {
+                out.close();
+                out = null;
+            }
+            return null;
+        });
+        writer.shutdown();
+    }
+}
@@ -0,0 +1,137 @@
+package se.jensen.sofi_n.web_inventory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/// The InventoryMetrics class counts and times the operations of an Inventory, and is registered as a platform MBean
+/// so the numbers can be read with jconsole or any other JMX client while the program runs.
+///
+/// Adding, removing, stock changes, loading and saving are all timed, their latencies are recorded in a
+/// LatencyHistogram each. A lookup takes only tens of nanoseconds, about as long as reading the clock twice, so every
+/// lookup is counted but only one in LOOKUP_SAMPLE_RATE, picked at random, is timed.
+///
+public class InventoryMetrics implements InventoryMetricsMXBean {
+    /// Attributes
+    private static final int LOOKUP_SAMPLE_RATE = 64;
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+    //metrics registered under each name, so an inventory closing doesn't unregister a newer one's metrics
+    private static final Map<ObjectName, InventoryMetrics> registered = new ConcurrentHashMap<>();
+    private final LongAdder lookupCount = new LongAdder();
+    private final LongAdder failedDecreases = new LongAdder();
+    private final LatencyHistogram lookupLatency = new LatencyHistogram(); //sampled
+    final LatencyHistogram adds = new LatencyHistogram();
+    final LatencyHistogram removes = new LatencyHistogram();
+    final LatencyHistogram stockIncreases = new LatencyHistogram();
+    final LatencyHistogram stockDecreases = new LatencyHistogram();
+    final LatencyHistogram batchAdjustments = new LatencyHistogram();
+    final LatencyHistogram loads = new LatencyHistogram();
+    final LatencyHistogram saves = new LatencyHistogram();
+
+    /// Recording
+    /*The startLookup function counts a lookup and returns the time it started if it is one of the timed ones*/
+    long startLookup() {
+        lookupCount.increment();
+        return ThreadLocalRandom.current().nextInt(LOOKUP_SAMPLE_RATE) == 0 ? System.nanoTime() : NOT_TIMED;
+    }
+
+    /*The lookupDone function takes the value returned by startLookup and records the time since, if it was timed*/
+    void lookupDone(long start) {
+        if (start != NOT_TIMED) {
+            lookupLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    void failedDecrease() {
+        failedDecreases.increment();
+    }
+
+    /// Registering
+    /*The register function registers the metrics as a platform MBean named after the products file, replacing the
+    * metrics of any earlier inventory using the same file. Returns the name to unregister with.*/
+    ObjectName register(String productsFile) throws JMException {
+        ObjectName name = new ObjectName("se.jensen.sofi_n.web_inventory:type=Inventory,file="
+                + ObjectName.quote(productsFile));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        synchronized (registered) {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            registered.put(name, this);
+        }
+        return name;
+    }
+
+    /*The unregister function unregisters the metrics, unless other metrics have been registered under the name
+    * since*/
+    void unregister(ObjectName name) throws JMException {
+        synchronized (registered) {
+            if (registered.remove(name, this)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            }
+        }
+    }
+
+    /// Override functions from InventoryMetricsMXBean interface
+    @Override
+    public long getLookups() {return lookupCount.sum();}
+
+    @Override
+    public long getAdds() {return adds.count();}
+
+    @Override
+    public long getRemoves() {return removes.count();}
+
+    @Override
+    public long getStockIncreases() {return stockIncreases.count();}
+
+    @Override
+    public long getStockDecreases() {return stockDecreases.count();}
+
+    @Override
+    public long getFailedDecreases() {return failedDecreases.sum();}
+
+    @Override
+    public long getBatchAdjustments() {return batchAdjustments.count();}
+
+    @Override
+    public LatencyHistogram.Summary getLookupLatency() {return lookupLatency.summary();}
+
+    @Override
+    public LatencyHistogram.Summary getAddLatency() {return adds.summary();}
+
+    @Override
+    public LatencyHistogram.Summary getRemoveLatency() {return removes.summary();}
+
+    @Override
+    public LatencyHistogram.Summary getStockIncreaseLatency() {return stockIncreases.summary();}
+
+    @Override
+    public LatencyHistogram.Summary getStockDecreaseLatency() {return stockDecreases.summary();}
+
+    @Override
+    public LatencyHistogram.Summary getBatchAdjustmentLatency() {return batchAdjustments.summary();}
+
+    @Override
+    public LatencyHistogram.Summary getLoadDuration() {return loads.summary();}
+
+    @Override
+    public LatencyHistogram.Summary getSaveDuration() {return saves.summary();}
+
+    /*The reset function starts every count and histogram over*/
+    @Override
+    public void reset() {
+        lookupCount.reset();
+        failedDecreases.reset();
+        for (LatencyHistogram histogram : new LatencyHistogram[]{lookupLatency, adds, removes, stockIncreases,
+                stockDecreases, batchAdjustments, loads, saves}) {
+            histogram.reset();
+        }
+    }
+}
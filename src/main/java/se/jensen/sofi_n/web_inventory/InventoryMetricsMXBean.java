@@ -0,0 +1,25 @@
+package se.jensen.sofi_n.web_inventory;
+
+/// The InventoryMetricsMXBean interface is what the InventoryMetrics class shows over JMX, in jconsole under
+/// se.jensen.sofi_n.web_inventory. Counts are since the start or the last reset, latencies are in microseconds.
+///
+public interface InventoryMetricsMXBean {
+    long getLookups();
+    long getAdds();
+    long getRemoves();
+    long getStockIncreases();
+    long getStockDecreases();
+    long getFailedDecreases();
+    long getBatchAdjustments();
+
+    LatencyHistogram.Summary getLookupLatency();
+    LatencyHistogram.Summary getAddLatency();
+    LatencyHistogram.Summary getRemoveLatency();
+    LatencyHistogram.Summary getStockIncreaseLatency();
+    LatencyHistogram.Summary getStockDecreaseLatency();
+    LatencyHistogram.Summary getBatchAdjustmentLatency();
+    LatencyHistogram.Summary getLoadDuration();
+    LatencyHistogram.Summary getSaveDuration();
+
+    void reset();
+}
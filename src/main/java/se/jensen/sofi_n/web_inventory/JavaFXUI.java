@@ -9,6 +9,7 @@ import javafx.scene.layout.*;
 import javafx.scene.text.Font;
 import javafx.scene.text.Text;
 import javafx.stage.Stage;
+import java.util.List;
 import java.util.Stack;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -25,6 +26,8 @@ public class JavaFXUI implements UI {
     private final int MAIN_CONTENT_INDEX = 1;
     private VBox mainContentBox;
     private Button backButton;
+    private ProductTable productTable; //created the first time products are listed
+    private VBox tableBox; //title and productTable, created with it and reused by every listing view
 
     /// Styling variables
     private final CuteTheme cuteTheme = new CuteTheme();
@@ -32,6 +35,8 @@ public class JavaFXUI implements UI {
     private final int BUTTON_HEIGHT = 60;
     private final double MAIN_BOX_WIDTH = 400;
     private final double MAIN_BOX_HEIGHT = 250;
+    private final double TABLE_WIDTH = 640;
+    private final double TABLE_HEIGHT = 400;
     private final int TOP_MARGIN = 50;
     private final int CONTENT_MARGIN = 20;
     private final int TITLE_FONT_SIZE = 56;
@@ -85,9 +90,14 @@ public class JavaFXUI implements UI {
     }
 
     /* The showError function takes a String describing the error and returns void. In this implementation of the
-     * function the error message is displayed in a popup. */
+     * function the error message is displayed in a popup. Errors from background threads, such as failed saves, are
+     * passed on to the JavaFX application thread first. */
     @Override
     public void showError(String error) {
+        if (!Platform.isFxApplicationThread()) {
+            Platform.runLater(() -> showError(error));
+            return;
+        }
         //make error type alert popup
         Alert alert = new Alert(Alert.AlertType.ERROR);
         alert.setTitle("Error");
@@ -126,6 +136,78 @@ public class JavaFXUI implements UI {
         goToView(() -> showContent(showDialogBox));
     }
 
+    /* The showProductPage function takes one page of the product listing and a Consumer<Integer> for asking for
+     * another page, and displays the page.
+     * In this implementation of the function all products are shown in a ProductTable, which only creates rows for
+     * what is visible, scrolled to the first product of the page, so no other pages have to be asked for. The table
+     * is created the first time, in a box with its title, and then kept up to date by the inventory, so the same box
+     * is shown again as it is, also when going back to an earlier listing.*/
+    @Override
+    public void showProductPage(ProductPage page, Consumer<Integer> onPageRequested) {
+        if (productTable == null) {
+            productTable = new ProductTable(inventory);
+            //Creating vertical box to contain title and table
+            tableBox = new VBox(CONTENT_MARGIN);
+            tableBox.setMaxWidth(TABLE_WIDTH);
+            tableBox.setPrefHeight(TABLE_HEIGHT);
+            tableBox.setStyle(cuteTheme.paneStyleString());
+
+            //make title label
+            Label pageTitle = new Label(CuteTheme.spacedOut("Current stock"));
+            pageTitle.setFont(cuteTheme.headerFont(HEADER_FONT_SIZE));
+            pageTitle.setStyle("-fx-text-fill: Black;");
+
+            //table fills the rest of the box
+            VBox.setVgrow(productTable.view(), Priority.ALWAYS);
+            tableBox.getChildren().addAll(pageTitle, productTable.view());
+        }
+
+        //clear previous, update history stack and show, scrolled to this page also when coming back to it
+        goToView(() -> {
+            showContent(tableBox);
+            productTable.scrollTo(page.offset());
+        });
+    }
+
+    /* The showSearchResults function takes the searched String, the matching products and a Consumer<Integer> for
+     * the chosen product, and displays the products.
+     * In this implementation of the function each result is a button with articleID, name and stock, in a scroll
+     * pane under the searched words. Clicking one passes its articleID on, which shows its product information.*/
+    @Override
+    public void showSearchResults(String query, List<Product> results, Consumer<Integer> onProductSelected) {
+        //Creating vertical box to contain title and results
+        VBox resultsBox = new VBox(CONTENT_MARGIN);
+        resultsBox.setMaxWidth(MAIN_BOX_WIDTH);
+        resultsBox.setStyle(cuteTheme.paneStyleString());
+
+        //make title label
+        Label pageTitle = new Label(CuteTheme.spacedOut("Search results"));
+        pageTitle.setFont(cuteTheme.headerFont(HEADER_FONT_SIZE));
+        pageTitle.setStyle("-fx-text-fill: Black;");
+        Label queryLabel = new Label("Products matching \"" + query + "\":");
+
+        //one button per result
+        VBox resultButtons = new VBox(5);
+        for (Product product : results) {
+            Button resultButton = new Button("Article ID: " + product.getArticleID() + "  " + product.getName()
+                    + "  stock: " + product.getStock());
+            resultButton.setMaxWidth(Double.MAX_VALUE);
+            resultButton.setAlignment(Pos.CENTER_LEFT);
+            resultButton.setStyle(cuteTheme.lowkeyButtonStyleString());
+            resultButton.setOnAction(event -> onProductSelected.accept(product.getArticleID()));
+            resultButtons.getChildren().add(resultButton);
+        }
+        ScrollPane resultsPane = new ScrollPane(resultButtons);
+        resultsPane.setFitToWidth(true);
+        resultsPane.setPrefViewportHeight(MAIN_BOX_HEIGHT);
+
+        //add to box
+        resultsBox.getChildren().addAll(pageTitle, queryLabel, resultsPane);
+
+        //clear previous, update history stack and show
+        goToView(() -> showContent(resultsBox));
+    }
+
     /* The promptProducitDetails function takes an integer for the articeID and a Consumer variable of the type
      * ProductInputDetails (See ProductsInputDetails class). It uses user input to create an object of
      * ProductInputDetails and preforms the onResult actions passed.*/
@@ -554,15 +636,27 @@ public class JavaFXUI implements UI {
         mainMenuBox.setAlignment(Pos.TOP_CENTER);
         mainMenuBox.setMaxWidth(MAIN_BOX_WIDTH);
 
-        ///add - button
+        ///add and import - buttons
+        //side by side, adding one product or a whole supplier catalog
         Button addButton = mainButton("Add product", inventory::startAddProductFlow);
+        addButton.setPrefWidth(140);
+        Button importButton = mainButton("Import", inventory::startImportFlow);
+        importButton.setPrefWidth(140);
+        HBox addButtons = new HBox(CONTENT_MARGIN, addButton, importButton);
+        addButtons.setAlignment(Pos.CENTER);
 
         /// list - button
         //displays list of products and stock
         Button listButton = mainButton("List products", inventory::listProducts);
 
-        /// info - button
+        /// info and search - buttons
+        //side by side, looking a product up by ID or by words
         Button infoButton = mainButton("Info", inventory::startProductInfoFlow);
+        infoButton.setPrefWidth(140);
+        Button searchButton = mainButton("Search", inventory::startSearchFlow);
+        searchButton.setPrefWidth(140);
+        HBox lookupButtons = new HBox(CONTENT_MARGIN, infoButton, searchButton);
+        lookupButtons.setAlignment(Pos.CENTER);
 
         /// Stock - button
         Button manageStockButton = mainButton("Manage stock", this::showStockOptions);
@@ -571,7 +665,7 @@ public class JavaFXUI implements UI {
         Button exitButton = mainButton("Exit", Platform::exit);
 
         //adding all buttons
-        mainMenuBox.getChildren().addAll(addButton, listButton, infoButton, manageStockButton, exitButton);
+        mainMenuBox.getChildren().addAll(addButtons, listButton, lookupButtons, manageStockButton, exitButton);
 
         //return
         return mainMenuBox;
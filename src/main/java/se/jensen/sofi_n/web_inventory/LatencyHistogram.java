@@ -0,0 +1,115 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/// The LatencyHistogram class counts how long an operation took, in nanoseconds, into a fixed set of buckets. Like
+/// an HDR histogram the buckets grow with the value: every power of two is split into 8 buckets, so a value is never
+/// more than 12.5% off from its bucket, from single nanoseconds up to the largest long, in 488 buckets.
+///
+/// Recording a value only adds one to its bucket, the count and the total. Every bucket is a LongAdder, which spreads
+/// updates from several threads over separate cells, so threads recording at the same time don't slow each other
+/// down. Reading a summary while values are recorded gives numbers that may be off by the values recorded meanwhile.
+///
+public class LatencyHistogram {
+    /// Attributes
+    private static final int SUB_BUCKET_BITS = 3; //8 buckets per power of two
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /// Summary
+    /// the count and the latencies at some percentiles, in microseconds, as shown over JMX
+    public record Summary(long count, double meanMicros, double p50Micros, double p90Micros, double p99Micros,
+                          double p999Micros, double maxMicros) {
+    }
+
+    /// Constructor
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /*The record function takes a duration in nanoseconds and counts it in its bucket*/
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0; //nanoTime is monotonic, but keep a bad value out of the last bucket
+        }
+        buckets[bucket(nanos)].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    /*The summary function returns the count, mean, 50th, 90th, 99th and 99.9th percentile and max. A percentile is
+    * the highest value of the bucket it falls in.*/
+    public Summary summary() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return new Summary(0, 0, 0, 0, 0, 0, 0);
+        }
+        return new Summary(total, micros(totalNanos.sum() / (double) total),
+                percentile(counts, total, 0.50), percentile(counts, total, 0.90),
+                percentile(counts, total, 0.99), percentile(counts, total, 0.999), micros(maxNanos.get()));
+    }
+
+    /*The reset function clears every bucket. Values recorded while resetting may be kept or lost.*/
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    /// Helpers
+    /*The bucket function returns the bucket of a value: values under 8 have one bucket each, higher values are
+    * bucketed by their highest bit and the three bits below it*/
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /*The highestValue function returns the highest value counted in a bucket*/
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    private double percentile(long[] counts, long total, double fraction) {
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return micros(Math.min(highestValue(i), maxNanos.get()));
+            }
+        }
+        return micros(maxNanos.get());
+    }
+
+    private static double micros(double nanos) {
+        return nanos / 1000.0;
+    }
+}
@@ -0,0 +1,106 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/// The LoadTestClient class is a small load generator for a locally running ServerMain. A number of virtual threads
+/// send requests for a set time, mixing product lookups (GET /products/{id}) with stock increases
+/// (POST /products/{id}/increase), and the requests per second and latency percentiles are printed at the end.
+///
+/// Arguments: [base url] [concurrent clients] [seconds] [lowest article ID] [highest article ID]
+/// Defaults:  http://localhost:8080 64 10 10000 10008
+///
+public class LoadTestClient {
+    /// Attributes
+    private static final int LOOKUPS_PER_INCREASE = 9; //90% reads
+
+    /// Worker result
+    /// latencies in nanoseconds and number of failed requests for one client
+    private record WorkerResult(long[] latencies, int count, int failures) {}
+
+    /*The main function reads the arguments, runs the clients and prints the results*/
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8080";
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int lowestID = args.length > 3 ? Integer.parseInt(args[3]) : 10000;
+        int highestID = args.length > 4 ? Integer.parseInt(args[4]) : 10008;
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        List<Future<WorkerResult>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                futures.add(executor.submit(() -> runWorker(client, baseUrl, lowestID, highestID, end)));
+            }
+        } //waits for all clients
+
+        //merge results
+        int total = 0;
+        int failures = 0;
+        for (Future<WorkerResult> future : futures) {
+            total += future.get().count();
+            failures += future.get().failures();
+        }
+        long[] latencies = new long[total];
+        int position = 0;
+        for (Future<WorkerResult> future : futures) {
+            WorkerResult result = future.get();
+            System.arraycopy(result.latencies(), 0, latencies, position, result.count());
+            position += result.count();
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("Requests: %d (%d failed) in %d s with %d clients%n", total, failures, seconds, clients);
+        System.out.printf("Throughput: %.0f requests/s%n", total / (double) seconds);
+        System.out.printf("Latency p50: %.2f ms  p99: %.2f ms  max: %.2f ms%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 1.0));
+    }
+
+    /*The runWorker function sends requests one after the other until the end time and records each latency*/
+    private static WorkerResult runWorker(HttpClient client, String baseUrl, int lowestID, int highestID, long end) {
+        long[] latencies = new long[1024];
+        int count = 0;
+        int failures = 0;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+            int id = random.nextInt(lowestID, highestID + 1);
+            HttpRequest request = random.nextInt(LOOKUPS_PER_INCREASE + 1) == 0
+                    ? HttpRequest.newBuilder(URI.create(baseUrl + "/products/" + id + "/increase?quantity=1"))
+                            .POST(HttpRequest.BodyPublishers.noBody()).build()
+                    : HttpRequest.newBuilder(URI.create(baseUrl + "/products/" + id)).GET().build();
+            long start = System.nanoTime();
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() >= 300) {
+                    failures++;
+                }
+            } catch (Exception e) {
+                failures++;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = System.nanoTime() - start;
+        }
+        return new WorkerResult(latencies, count, failures);
+    }
+
+    /*The percentile function returns the latency at the passed fraction of the sorted latencies, in milliseconds*/
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.max(index, 0)] / 1_000_000.0;
+    }
+}
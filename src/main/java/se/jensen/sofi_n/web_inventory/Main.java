@@ -6,6 +6,10 @@ import javafx.stage.Stage;
 
 /// The Main class
 public class Main extends Application { //extends javaFX application args
+    //start with -Dinventory.lazyDescriptions=true to decode descriptions only when a product is shown
+    private static final boolean LAZY_DESCRIPTIONS = Boolean.getBoolean("inventory.lazyDescriptions");
+    private Inventory inventory;
+
     /*The start function is a mandatory override function in JavaFX
     * This implementation creates an object of the JavaFXUI passing through the primaryStage Stage object for the
     * main window. An inventory object is created passing the JavaFXUI object, as well as the names of the files
@@ -14,11 +18,22 @@ public class Main extends Application { //extends javaFX application args
     @Override
     public void start(Stage primaryStage) {
         JavaFXUI ui = new JavaFXUI(primaryStage); // creates instance of UI class
-        Inventory inventory = new Inventory(ui, "Products.txt", "nutrient_tables.txt"); // creating instance of inventory logic handler
+        // creating instance of inventory logic handler
+        inventory = new Inventory(ui, "Products.txt", "nutrient_tables.txt", LAZY_DESCRIPTIONS);
         ui.setInventory(inventory);
 
         ui.showWindow();
     }
+
+    /*The stop function is called by JavaFX when the window is closed. Changes are saved in the background, so this
+    * waits for everything to be written before the program exits.*/
+    @Override
+    public void stop() {
+        if (inventory != null) {
+            inventory.close();
+        }
+    }
+
     //main function runs start method
     public static void main(String[] args) {
         launch(args);//getParameters gets called, an object of main is created and runs start function
@@ -0,0 +1,72 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/// The NutrientSchema class describes which nutrients a category of food products has and in which order. Each
+/// FoodProduct stores only a plain int array of values, and the labels are shared by every product of the category
+/// through its schema, instead of every product having its own map with its own keys and boxed values.
+///
+public class NutrientSchema {
+    /// Schemas
+    public static final NutrientSchema STANDARD = new NutrientSchema(
+            "Calories (kcal)", "Fat (g)", "Carbs (g)", "Protein (g)");
+    public static final NutrientSchema ENERGY_DRINK = new NutrientSchema(
+            "Calories (kcal)", "Fat (g)", "Carbs (g)", "Protein (g)", "Caffeine(mg)");
+
+    /// Attributes
+    private final String[] labels;
+
+    /// Constructor
+    private NutrientSchema(String... labels) {
+        this.labels = labels;
+    }
+
+    /// Getters
+    public int size() {return labels.length;}
+
+    public String label(int index) {return labels[index];}
+
+    /*The asMap function takes an array of values in schema order and returns a read-only map view from label to
+    * value, in the same order. Values beyond the end of the array are left out of the view.*/
+    public Map<String, Integer> asMap(int[] values) {
+        int size = Math.min(values.length, labels.length);
+        return new AbstractMap<>() {
+            @Override
+            public Set<Entry<String, Integer>> entrySet() {
+                return new AbstractSet<>() {
+                    @Override
+                    public int size() {
+                        return size;
+                    }
+
+                    @Override
+                    public Iterator<Entry<String, Integer>> iterator() {
+                        return new Iterator<>() {
+                            private int index = 0;
+
+                            @Override
+                            public boolean hasNext() {
+                                return index < size;
+                            }
+
+                            @Override
+                            public Entry<String, Integer> next() {
+                                if (index >= size) {
+                                    throw new NoSuchElementException();
+                                }
+                                Entry<String, Integer> entry = new SimpleImmutableEntry<>(labels[index], values[index]);
+                                index++;
+                                return entry;
+                            }
+                        };
+                    }
+                };
+            }
+        };
+    }
+}
@@ -1,16 +1,42 @@
 package se.jensen.sofi_n.web_inventory;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.function.Consumer;
 
 /// The abstract class Product contains all the attributes and functions that each inheriting product type should have
 /// for this application.
+///
+/// The stock can be changed by several threads at once. tryAddStock and tryRemoveStock update it with compare-and-set,
+/// so no change is ever lost and the stock can never be taken below zero, without any locking. Each change also
+/// increases a version kept with the stock, which orders the changes of the product.
+///
+/// Once added to an inventory the product is attached to its ProductStore, which keeps the name, price, description,
+/// stock and nutrient values off the heap. The fields below are then unused, and the getters and setters go to the
+/// store instead. They are used again if the product is removed and detached.
 public abstract class Product {
     /// Attributes
     protected int articleID;
     protected String name;
     protected double price;
     protected String description;
-    protected int stock=0;
+    protected volatile long stockWord=0; //stock and its version, see ProductStore.wordStock and wordVersion
+    ProductStore store; //set when first attached
+    volatile long storeHandle = ProductStore.DETACHED; //the product's slot in the store, or DETACHED
+    long catalogSequence; //when the product was added to the inventory, orders it in the catalog snapshots
+    private static final VarHandle STOCK;
+    //class names written to the products file, in the order deserialize checks them
+    private static final String[] CLASS_NAMES = {"Accessory", "EnergyDrink", "ProteinBar", "ProteinPowder"};
+    //one reusable cursor per thread for deserializing lines from Strings
+    private static final ThreadLocal<FieldCursor> CURSOR = ThreadLocal.withInitial(FieldCursor::new);
+
+    static {
+        try {
+            STOCK = MethodHandles.lookup().findVarHandle(Product.class, "stockWord", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     /// Constructor
     public Product(int articleID) {
@@ -21,17 +47,96 @@ public abstract class Product {
     public int getArticleID() {return articleID;}
     public void setArticleID(int articleID) {this.articleID = articleID;}
 
-    public String getName() {return name;}
-    public void setName(String name) {this.name = name;}
+    public String getName() {
+        return storeHandle == ProductStore.DETACHED ? name : store.name(this);
+    }
+    public void setName(String name) {
+        if (storeHandle == ProductStore.DETACHED) {
+            this.name = name;
+        } else {
+            store.setName(this, name);
+        }
+    }
+
+    public double getPrice() {
+        return storeHandle == ProductStore.DETACHED ? price : store.price(this);
+    }
+    public void setPrice(double price) {
+        if (storeHandle == ProductStore.DETACHED) {
+            this.price = price;
+        } else {
+            store.setPrice(this, price);
+        }
+    }
+
+    public int getStock() {
+        return storeHandle == ProductStore.DETACHED ? ProductStore.wordStock(stockWord) : store.stock(this);
+    }
+    public void setStock(int stock) {
+        if (storeHandle == ProductStore.DETACHED || !store.setStock(this, stock)) {
+            long word;
+            do {
+                word = (long) STOCK.getVolatile(this);
+            } while (!STOCK.compareAndSet(this, word, ProductStore.nextWord(word, stock)));
+        }
+    }
+
+    public String getDescription() {
+        return storeHandle == ProductStore.DETACHED ? description : store.description(this);
+    }
+    public void setDescription(String description) {
+        if (storeHandle == ProductStore.DETACHED) {
+            this.description = description;
+        } else {
+            store.setDescription(this, description);
+        }
+    }
+
+    /// Atomic stock changes
+    /*The tryAddStock function takes a quantity and adds it to the stock. Returns false, leaving the stock unchanged,
+    * if the quantity isn't positive or the stock would overflow.*/
+    public boolean tryAddStock(int quantity) {
+        return addStock(quantity) != ProductStore.REFUSED;
+    }
 
-    public double getPrice() {return price;}
-    public void setPrice(double price) {this.price = price;}
+    /*The tryRemoveStock function takes a quantity and removes it from the stock if there is enough. Returns false,
+    * leaving the stock unchanged, if the quantity isn't positive or the stock is too low.*/
+    public boolean tryRemoveStock(int quantity) {
+        return removeStock(quantity) != ProductStore.REFUSED;
+    }
 
-    public int getStock() {return stock;}
-    public void setStock(int stock) {this.stock = stock;}
+    /*The addStock function works like tryAddStock, but returns the stock word just before the quantity was added, or
+    * ProductStore.REFUSED. The Inventory uses it to report the old and new stock of exactly this change, and its
+    * version.*/
+    long addStock(int quantity) {
+        return quantity <= 0 ? ProductStore.REFUSED : changeStock(quantity);
+    }
+
+    /*The removeStock function works like tryRemoveStock, but returns the stock word just before the quantity was
+    * removed, or ProductStore.REFUSED*/
+    long removeStock(int quantity) {
+        return quantity <= 0 ? ProductStore.REFUSED : changeStock(-quantity);
+    }
 
-    public String getDescription() {return description;}
-    public void setDescription(String description) {this.description = description;}
+    private long changeStock(int delta) {
+        if (storeHandle != ProductStore.DETACHED) {
+            long result = store.changeStock(this, delta);
+            if (result != ProductStore.NOT_STORED) {
+                return result;
+            }
+        }
+        long current;
+        long stock;
+        do {
+            current = (long) STOCK.getVolatile(this);
+            stock = ProductStore.wordStock(current) + (long) delta;
+            if (stock < 0 || stock > Integer.MAX_VALUE) {
+                return ProductStore.REFUSED;
+            }
+            //retry if another thread got there first
+        } while (!STOCK.compareAndSet(this, current, ProductStore.nextWord(current, (int) stock)));
+        return current;
+    }
 
     /// Abstract Method
     /*The function category returns a String representing the category name*/
@@ -41,73 +146,79 @@ public abstract class Product {
     /*The serialize function returns a String with classname, article id, name, price, description and stock, separated
     * by semicolon.*/
     public String serialize(){
-        return getClass().getSimpleName() + ";" + articleID + ";" + name + ";" + price + ";" + description + ";" + stock;
+        return getClass().getSimpleName() + ";" + articleID + ";" + getName() + ";" + getPrice() + ";" + getDescription()
+                + ";" + getStock();
     }
 
     /*The deserialize function takes a String argument consisting of one line of code from the products file
-    * splits, iit at the semicolons, verifies the parts and if valid, creates a product using them.
-    * The product is then returned as returnvalue. The functions second argument is a Consumer string type
-    * with actions to preform on any resulting error-message String.*/
+    * and passes it on to the deserialize function below using this thread's reusable FieldCursor.
+    * The functions second argument is a Consumer string type with actions to preform on any resulting
+    * error-message String.*/
     public static Product deserialize(String line, Consumer<String> onErrorMessage){
-        //split into parts
-        String[] parts = line.split(";");
+        return deserialize(CURSOR.get().reset(line), onErrorMessage);
+    }
+
+    /*The deserialize function takes a FieldCursor pointed at one line from the products file, reads and verifies
+    * the fields and if valid, creates a product using them. The product is then returned as returnvalue. Numbers are
+    * read directly from the line and the only Strings created are the name and description, unless there is an
+    * error. The functions second argument is a Consumer string type with actions to preform on any resulting
+    * error-message String.*/
+    public static Product deserialize(FieldCursor cursor, Consumer<String> onErrorMessage){
+        return deserialize(cursor, true, onErrorMessage);
+    }
+
+    /*The deserialize function works like the one above, but leaves the description unset if withDescription is
+    * false, for loading descriptions lazily from the file later*/
+    static Product deserialize(FieldCursor cursor, boolean withDescription, Consumer<String> onErrorMessage){
         //validate lenght
-        if (parts.length < 6) {
-            onErrorMessage.accept("Missing fields in line: " + line);
+        int fieldCount = cursor.fieldCount();
+        if (fieldCount < 6) {
+            onErrorMessage.accept("Missing fields in line: " + cursor.line());
             return null;
         }
-        if (parts.length > 6) {
-            onErrorMessage.accept("Too many fields in line: " + line);
+        if (fieldCount > 6) {
+            onErrorMessage.accept("Too many fields in line: " + cursor.line());
             return null;
         }
         //validate parts
-        String className = parts[0];
-        try {
-            int articleID = Integer.parseInt(parts[1]);
-            String name = parts[2];
-
-            double price = Double.parseDouble(parts[3]);
-            String description = parts[4];
-
-            int stock = Integer.parseInt(parts[5]);
-            //create product
-            switch (className) {
-                case "Accessory":
-                    Accessory accessory = new Accessory(articleID);
-                    accessory.setName(name); accessory.setPrice(price); accessory.setDescription(description); accessory.setStock(stock);
-                    return accessory;
-                case "EnergyDrink":
-                    EnergyDrink eDrink = new EnergyDrink(articleID);
-                    eDrink.setName(name); eDrink.setPrice(price); eDrink.setDescription(description); eDrink.setStock(stock);
-                    return eDrink;
-                case "ProteinBar":
-                    ProteinBar bar = new ProteinBar(articleID);
-                    bar.setName(name); bar.setPrice(price); bar.setDescription(description); bar.setStock(stock);
-                    return bar;
-                case "ProteinPowder":
-                    ProteinPowder protein = new ProteinPowder(articleID);
-                    protein.setName(name); protein.setPrice(price); protein.setDescription(description); protein.setStock(stock);
-                    return protein;
-                default:
-                    //unknown type error
-                    onErrorMessage.accept("Unknown class: " + className);
-                    return null;
-
-            }
+        int classIndex = cursor.nextIndexOf(CLASS_NAMES);
+        if (classIndex < 0) {
+            //unknown type error
+            onErrorMessage.accept("Unknown class: " + cursor.lastField());
+            return null;
+        }
+        int articleID = cursor.nextInt();
+        String name = cursor.nextString();
+        double price = cursor.nextDouble();
+        String description = null;
+        if (withDescription) {
+            description = cursor.nextString();
+        } else {
+            cursor.skipField();
+        }
+        int stock = cursor.nextInt();
         //numberformat error
-        }catch (NumberFormatException e){
-                onErrorMessage.accept("Inccorect number format in line: " + line);
-                return null;
-        //other error
-        }catch (Exception e){
-                onErrorMessage.accept("Error reading line: " + line);
-                return null;
+        if (!cursor.ok()) {
+            onErrorMessage.accept("Inccorect number format in line: " + cursor.line());
+            return null;
         }
+        //create product
+        Product product = switch (classIndex) {
+            case 0 -> new Accessory(articleID);
+            case 1 -> new EnergyDrink(articleID);
+            case 2 -> new ProteinBar(articleID);
+            default -> new ProteinPowder(articleID);
+        };
+        product.setName(name); product.setPrice(price); product.setDescription(description); product.setStock(stock);
+        return product;
     }
 
     /// toString override
     @Override
     public String toString() {
+        String name = getName();
+        double price = getPrice();
+        String description = getDescription();
         String str = "{";
         str += "articleID=" + articleID;
         if (name != null) {
@@ -119,7 +230,7 @@ public abstract class Product {
         if (description != null) {
             str += ", description=" + description;
         }
-        str += ", stock=" + stock;
+        str += ", stock=" + getStock();
         str += "}";
         return str;
     }
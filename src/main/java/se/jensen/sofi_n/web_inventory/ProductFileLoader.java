@@ -0,0 +1,193 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/// The ProductFileLoader class reads a products file by memory mapping it and splitting it into chunks that each start
+/// and end on a line break. The chunks are parsed in parallel on the common fork-join pool using the Product class's
+/// deserialize function, and the results are put back together in chunk order, so both the products and any error
+/// messages come out in the same order as the lines in the file.
+///
+/// In the lazy description mode the descriptions aren't decoded. Only where each one is in the file is recorded, and
+/// the file is mapped as a DescriptionFile to decode them from when they are asked for.
+///
+public class ProductFileLoader {
+    /// Attributes
+    private static final int MIN_CHUNK_SIZE = 1 << 20; //smaller files are parsed as one chunk
+    private static final int MAX_CHUNK_SIZE = 1 << 30; //a single mapping can't be larger than 2GB
+    private static final int CHUNKS_PER_THREAD = 4; //extra chunks even out uneven parsing times
+
+    /// Chunk result
+    /// products and error messages from one chunk, in line order
+    private record ChunkResult(List<Product> products, long[] descriptions, List<String> errors) {}
+
+    /*The load function takes a String file name and a Consumer String type with actions to perform on error messages,
+    * parses every line of the file into a product and returns them in file order. Error messages for bad lines are
+    * passed on after parsing, in file order.*/
+    public static List<Product> load(String fileName, Consumer<String> onErrorMessage) throws IOException {
+        return load(fileName, false, onErrorMessage).products();
+    }
+
+    /*The load function works like the one above, but if lazyDescriptions is true the descriptions are left in the
+    * file. The file is then mapped as a DescriptionFile, returned along with where each product's description is.*/
+    public static DescriptionFile.LoadedProducts load(String fileName, boolean lazyDescriptions,
+                                                      Consumer<String> onErrorMessage) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            long[] bounds = chunkBounds(channel);
+            int chunkCount = bounds.length - 1;
+            List<ChunkResult> results = IntStream.range(0, chunkCount)
+                    .parallel() //runs on the common fork-join pool
+                    .mapToObj(i -> parseChunk(channel, bounds[i], bounds[i + 1], lazyDescriptions))
+                    .toList(); //keeps chunk order
+
+            //merge in chunk order
+            int total = 0;
+            for (ChunkResult result : results) {
+                total += result.products().size();
+            }
+            List<Product> products = new ArrayList<>(total);
+            long[] descriptions = lazyDescriptions ? new long[total] : null;
+            for (ChunkResult result : results) {
+                if (lazyDescriptions) {
+                    System.arraycopy(result.descriptions(), 0, descriptions, products.size(),
+                            result.products().size());
+                }
+                products.addAll(result.products());
+                result.errors().forEach(onErrorMessage);
+            }
+            DescriptionFile descriptionFile = lazyDescriptions ? DescriptionFile.map(channel) : null;
+            return new DescriptionFile.LoadedProducts(products, descriptionFile, descriptions);
+        }
+    }
+
+    /*The chunkBounds function splits the file into evenly sized parts and moves each split point forward to just past
+    * the next line break. Returns the start of every chunk followed by the end of the file.*/
+    private static long[] chunkBounds(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        long chunkCount = Math.min(size / MIN_CHUNK_SIZE, (long) parallelism * CHUNKS_PER_THREAD);
+        chunkCount = Math.max(chunkCount, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        chunkCount = Math.max(chunkCount, 1);
+
+        List<Long> bounds = new ArrayList<>();
+        bounds.add(0L);
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        for (long i = 1; i < chunkCount; i++) {
+            long position = Math.max(size * i / chunkCount, bounds.get(bounds.size() - 1));
+            long lineStart = nextLineStart(channel, position, probe);
+            if (lineStart > bounds.get(bounds.size() - 1) && lineStart < size) {
+                bounds.add(lineStart);
+            }
+        }
+        bounds.add(size);
+
+        long[] result = new long[bounds.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = bounds.get(i);
+        }
+        return result;
+    }
+
+    /*The nextLineStart function reads forward from the passed position and returns the position just past the next
+    * line break, or the end of the file if there is none*/
+    private static long nextLineStart(FileChannel channel, long position, ByteBuffer probe) throws IOException {
+        while (true) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    /*The parseChunk function maps the file region between start and end, splits it into lines and deserializes each
+    * line. Errors are collected rather than reported right away, since chunks finish in any order. In the lazy mode
+    * the file position of each product's description is collected as well.*/
+    private static ChunkResult parseChunk(FileChannel channel, long start, long end, boolean lazyDescriptions) {
+        List<Product> products = new ArrayList<>();
+        long[] descriptions = lazyDescriptions ? new long[256] : null;
+        List<String> errors = new ArrayList<>();
+        MappedByteBuffer buffer;
+        try {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            errors.add("Couldn't load: " + e.getMessage());
+            return new ChunkResult(products, descriptions, errors);
+        }
+
+        FieldCursor cursor = new FieldCursor(); //reused for every line in the chunk
+        Consumer<String> onError = errors::add;
+        byte[] lineBytes = new byte[256]; //reused for every line, grows when needed
+        int length = 0;
+        int limit = buffer.limit();
+        for (int i = 0; i <= limit; i++) {
+            if (i == limit && length == 0) {
+                break;
+            }
+            byte b = i < limit ? buffer.get(i) : (byte) '\n'; //the last line may have no line break
+            if (b == '\n') {
+                Product product = parseLine(cursor, lineBytes, length, lazyDescriptions, onError);
+                if (product != null) {
+                    if (lazyDescriptions) {
+                        if (products.size() == descriptions.length) {
+                            descriptions = Arrays.copyOf(descriptions, descriptions.length * 2);
+                        }
+                        descriptions[products.size()] = descriptionReference(cursor, lineBytes, length,
+                                start + i - length, product);
+                    }
+                    products.add(product);
+                }
+                length = 0;
+            } else {
+                if (length == lineBytes.length) {
+                    lineBytes = Arrays.copyOf(lineBytes, length * 2);
+                }
+                lineBytes[length++] = b;
+            }
+        }
+        return new ChunkResult(products, descriptions, errors);
+    }
+
+    /*The parseLine function points the cursor at the bytes of one line, dropping a trailing carriage return, and
+    * returns the product if it could be deserialized. The line is never decoded as a whole.*/
+    private static Product parseLine(FieldCursor cursor, byte[] lineBytes, int length, boolean lazyDescriptions,
+                                     Consumer<String> onError) {
+        if (length > 0 && lineBytes[length - 1] == '\r') {
+            length--;
+        }
+        return Product.deserialize(cursor.reset(lineBytes, 0, length), !lazyDescriptions, onError);
+    }
+
+    /*The descriptionReference function takes the bytes of a line that was deserialized without its description and
+    * the file position of the line, and returns where the description is in the file. A description too long to be
+    * referenced is set on the product instead.*/
+    private static long descriptionReference(FieldCursor cursor, byte[] lineBytes, int length, long lineStart,
+                                             Product product) {
+        cursor.reset(lineBytes, 0, length);
+        for (int field = 0; field < 5; field++) { //class, articleID, name, price, description
+            cursor.skipField();
+        }
+        long reference = DescriptionFile.reference(lineStart + cursor.lastFieldStart(),
+                cursor.lastFieldEnd() - cursor.lastFieldStart());
+        if (reference == DescriptionFile.NOT_IN_FILE) {
+            product.setDescription(cursor.lastField());
+        }
+        return reference;
+    }
+}
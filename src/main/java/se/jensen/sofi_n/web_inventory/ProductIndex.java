@@ -0,0 +1,131 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.util.Arrays;
+
+/// The ProductIndex class is a hash index from articleID to Product, used by the Inventory class so that looking up a
+/// product doesn't require walking the whole product list. The articleIDs are stored as primitive ints in an open
+/// addressing table with linear probing, which means lookups never box the ID or allocate any objects.
+///
+public class ProductIndex {
+    /// Attributes
+    private static final int INITIAL_CAPACITY = 16;
+    private int[] keys;
+    private Product[] values; //null marks an empty slot
+    private int size = 0;
+    private int mask;
+
+    /// Constructor
+    public ProductIndex() {
+        keys = new int[INITIAL_CAPACITY];
+        values = new Product[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
+    }
+
+    /* The get function takes an integer articleID and returns the product stored under it, or null if there is none*/
+    public Product get(int articleID) {
+        int slot = slot(articleID);
+        while (values[slot] != null) {
+            if (keys[slot] == articleID) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask; //next slot, wrapping around
+        }
+        return null;
+    }
+
+    /* The put function takes a product and stores it under its articleID, replacing and returning any product
+    * previously stored under the same ID*/
+    public Product put(Product product) {
+        if ((size + 1) * 4 > values.length * 3) { //keep load factor under 0.75
+            resize(values.length * 2);
+        }
+        int articleID = product.articleID;
+        int slot = slot(articleID);
+        while (values[slot] != null) {
+            if (keys[slot] == articleID) {
+                Product previous = values[slot];
+                values[slot] = product;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = articleID;
+        values[slot] = product;
+        size++;
+        return null;
+    }
+
+    /* The remove function takes an integer articleID, removes the product stored under it and returns it, or returns
+    * null if no such product exists. Following entries in the same probe run are shifted back to fill the gap, so the
+    * table never needs tombstones.*/
+    public Product remove(int articleID) {
+        int slot = slot(articleID);
+        while (values[slot] != null) {
+            if (keys[slot] == articleID) {
+                Product removed = values[slot];
+                shiftBack(slot);
+                size--;
+                return removed;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /* The size function returns the number of indexed products*/
+    public int size() {
+        return size;
+    }
+
+    /* The clear function removes all products from the index*/
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /// Table helpers
+    /*The slot function mixes the bits of the articleID, since the IDs are sequential, and returns its home slot*/
+    private int slot(int articleID) {
+        int hash = articleID * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /*The shiftBack function empties the passed slot and moves any following entries whose home slot lies at or before
+    * the gap back into it, keeping every probe run unbroken*/
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (values[slot] == null) {
+                break;
+            }
+            int home = slot(keys[slot]);
+            //move entry if its home is not cyclically in (gap, slot]
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        values[gap] = null;
+    }
+
+    /*The resize function moves all entries into new tables of the passed capacity*/
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        Product[] oldValues = values;
+        keys = new int[capacity];
+        values = new Product[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slot(oldKeys[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -16,4 +16,36 @@ public class ProductInputDetails {
         this.priceStr = priceStr;
         this.description = description;
     }
+
+    /// Validation
+    /*The validate function checks the details the same way whichever way the product is added, from the add form
+    * or from a catalog import. Returns null if they are valid, otherwise the reason they aren't.*/
+    public String validate() {
+        if (name == null || name.trim().isEmpty()) {
+            return "Product name can't be empty";
+        }
+        if (priceStr == null || priceStr.trim().isEmpty()) {
+            return "Product price can't be empty";
+        }
+        double price;
+        try {
+            price = Double.parseDouble(priceStr);
+        } catch (NumberFormatException e) {
+            return "Invalid price format";
+        }
+        if (!(price >= 0) || Double.isInfinite(price)) {
+            return "Invalid price: " + priceStr.trim();
+        }
+        if (description == null || description.trim().isEmpty()) {
+            return "Product description can't be empty";
+        }
+        //the products file separates its fields with ';'
+        if (name.indexOf(';') >= 0) {
+            return "Product name can't contain ';'";
+        }
+        if (description.indexOf(';') >= 0) {
+            return "Product description can't contain ';'";
+        }
+        return null;
+    }
 }
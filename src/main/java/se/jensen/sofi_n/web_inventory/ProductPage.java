@@ -0,0 +1,18 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.util.List;
+
+/// The ProductPage record is one page of the product listing: the products on the page, the position of the first of
+/// them in the whole listing, the page size that was asked for and how many products there were in total when the
+/// page was read. The position of the next or previous page can be passed back to the Inventory to get that page.
+///
+public record ProductPage(List<Product> products, int offset, int pageSize, int total) {
+
+    public boolean hasNext() {return offset + products.size() < total;}
+
+    public boolean hasPrevious() {return offset > 0;}
+
+    public int nextOffset() {return offset + products.size();}
+
+    public int previousOffset() {return Math.max(0, offset - pageSize);}
+}
@@ -0,0 +1,737 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+
+/// The ProductStore class keeps the fields of the inventory's products in native memory off the Java heap, so a
+/// catalog of millions of products doesn't fill the heap with names, descriptions and nutrient arrays that the
+/// garbage collector has to trace and copy.
+///
+/// Each product gets a fixed width slot in a slab of native memory, holding its stock, price, nutrient values and
+/// where its name and description are. Names and descriptions are stored as UTF-8 bytes in larger string chunks,
+/// one byte per character for the plain ASCII text most products have. Equal strings are stored only once: a
+/// catalog repeats the same description across every flavour and size of a product, and those products all point
+/// at one copy.
+/// A product added to the inventory is attached to the store: its heap fields are moved into a slot and the Product
+/// object becomes a small view whose getters and setters read and write the slot. Products outside the inventory,
+/// like one being filled in by the add product flow, keep their fields on the heap. A removed product is detached,
+/// getting its fields back on the heap, so anyone still holding it can go on reading it.
+///
+/// The stock is changed with compare-and-set directly in the slot, without locking. It shares a long with a version
+/// that goes up by one with every write of the stock, so each change gets a version in the order the changes were
+/// made, and a change made through a removed product can never land in the slot of the product taking it over: the
+/// version keeps counting when a slot is reused, and the slot's generation, increased when it is freed, tells a
+/// product that the slot isn't its own anymore. The other fields are read optimistically with a
+/// StampedLock, and read again under its read lock if something was written meanwhile. Writes take the write lock,
+/// they are only made when products are added, removed or edited.
+///
+/// A description may also be left in the mapped file it was loaded from, see DescriptionFile. Its reference in the
+/// slot then points into that file instead of a chunk, and it is decoded when asked for.
+///
+/// The slabs and chunks come from automatic arenas and are freed by the garbage collector once the store and every
+/// product viewing it are unreachable, so a store is never closed.
+///
+public class ProductStore {
+    /// Slot layout, in bytes from the start of a slot
+    private static final long STOCK_WORD = 0; //version in the high int, stock in the low int
+    private static final long PRICE = 8;
+    private static final long NAME = 16; //string reference, chunk in the high int and offset in the low int
+    private static final long FILE_REFERENCE = Long.MIN_VALUE; //set on a reference to the description file
+    private static final long DESCRIPTION = 24;
+    private static final long NAME_LENGTH = 32; //bytes, -1 for null
+    private static final long DESCRIPTION_LENGTH = 36;
+    private static final long NUTRIENT_COUNT = 40;
+    private static final long GENERATION = 44; //increased when the slot is freed
+    private static final long NUTRIENTS = 48;
+    static final int MAX_NUTRIENTS = 6; //nutrient values fitting in a slot, the largest schema has 5
+    private static final long SLOT_SIZE = NUTRIENTS + MAX_NUTRIENTS * Integer.BYTES;
+
+    /// Attributes
+    static final long DETACHED = -1; //handle of a product with its fields on the heap
+    //results of changeStock other than the previous stock word, whose stock is never negative
+    static final long REFUSED = -1; //the stock would go below zero or overflow
+    static final long NOT_STORED = -2; //the product is detached, change the stock on the heap instead
+    //compare-and-set access to a long in a segment, coordinates are the segment and the offset
+    private static final VarHandle WORD = ValueLayout.JAVA_LONG.varHandle();
+    private static final int SLAB_SHIFT = 14; //16384 slots per slab, a little over 1 MB
+    private static final int SLAB_SLOTS = 1 << SLAB_SHIFT;
+    private static final int STRING_CHUNK_SIZE = 1 << 20;
+    private final Arena arena = Arena.ofAuto(); //slabs are kept as long as the store
+    private final StampedLock lock = new StampedLock();
+    private volatile MemorySegment[] slabs = new MemorySegment[0]; //only grows, read without locking
+    private int slotCount = 0; //slots handed out so far, freed ones included
+    private int[] freeSlots = new int[16];
+    private int freeCount = 0;
+    private final BitSet liveSlots = new BitSet(); //slots holding a product, for compacting strings
+    private volatile MemorySegment[] chunks = new MemorySegment[0];
+    private long chunkUsed = 0; //bytes used in the last chunk
+    private long stringBytes = 0; //bytes of the strings held by slots, a shared string counted once per slot
+    private long storedStringBytes = 0; //bytes of the distinct strings stored
+    private long garbageStringBytes = 0; //bytes of released strings, reclaimed by compactStringsIfWasteful
+    //string table, see Strings
+    private static final long STRING_HEADER = 16;
+    private static final long NEXT_STRING = -16; //from a string's reference, 0 at the end of its bucket
+    private static final long HOLDERS = -8; //slots holding the string
+    private static final long STORED_LENGTH = -4;
+    private static final int MIN_BUCKETS = 1024;
+    private MemorySegment buckets = Arena.ofAuto().allocate(MIN_BUCKETS * Long.BYTES, Long.BYTES); //0 if empty
+    private int storedStrings = 0;
+    private final DescriptionFile descriptionFile; //null if every description is in the chunks
+
+    /// Constructors
+    public ProductStore() {
+        this(null);
+    }
+
+    /*The ProductStore constructor takes the file the descriptions of the products about to be attached were left
+    * in, or null*/
+    public ProductStore(DescriptionFile descriptionFile) {
+        this.descriptionFile = descriptionFile;
+    }
+
+    /// Attaching and detaching
+    /*The attach function takes a product not yet shared with other threads, moves its fields into a free slot and
+    * makes it a view of that slot. Throws an IllegalStateException if the product is already attached.*/
+    void attach(Product product) {
+        attach(product, DescriptionFile.NOT_IN_FILE);
+    }
+
+    /*The attach function takes a product and where its description is in the store's description file, or
+    * NOT_IN_FILE to store the product's own description, and attaches the product*/
+    void attach(Product product, long description) {
+        long stamp = lock.writeLock();
+        try {
+            if (product.storeHandle != DETACHED) {
+                throw new IllegalStateException("Product " + product.getArticleID() + " is already stored");
+            }
+            int slot = allocateSlot();
+            MemorySegment slab = slab(slot);
+            long offset = offset(slot);
+            slab.set(ValueLayout.JAVA_DOUBLE, offset + PRICE, product.price);
+            putString(slab, offset + NAME, offset + NAME_LENGTH, product.name);
+            if (description == DescriptionFile.NOT_IN_FILE) {
+                putString(slab, offset + DESCRIPTION, offset + DESCRIPTION_LENGTH, product.description);
+            } else {
+                slab.set(ValueLayout.JAVA_LONG, offset + DESCRIPTION,
+                        FILE_REFERENCE | DescriptionFile.offset(description));
+                slab.set(ValueLayout.JAVA_INT, offset + DESCRIPTION_LENGTH, DescriptionFile.length(description));
+            }
+            int[] nutrients = product instanceof FoodProduct foodProduct ? foodProduct.nutrientValues : null;
+            putNutrients(slab, offset, nutrients);
+            int generation = slab.get(ValueLayout.JAVA_INT, offset + GENERATION);
+            long word = (long) WORD.getVolatile(slab, offset + STOCK_WORD); //the version goes on from the last product
+            WORD.setVolatile(slab, offset + STOCK_WORD, nextWord(word, wordStock(product.stockWord)));
+            product.store = this;
+            product.storeHandle = ((long) slot << 32) | (generation & 0xFFFFFFFFL);
+            //the slot holds the fields from now on
+            product.name = null;
+            product.description = null;
+            if (nutrients != null) {
+                ((FoodProduct) product).nutrientValues = null;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /*The detach function takes a product attached to this store, copies its fields back to the heap and frees its
+    * slot. The slot's generation is increased and then the stock is taken with compare-and-set, so a stock change
+    * made through the product meanwhile either lands before and is copied or fails and is retried on the heap.*/
+    void detach(Product product) {
+        long stamp = lock.writeLock();
+        try {
+            long handle = product.storeHandle;
+            if (handle == DETACHED || product.store != this) {
+                return;
+            }
+            int slot = slot(handle);
+            MemorySegment slab = slab(slot);
+            long offset = offset(slot);
+            product.price = slab.get(ValueLayout.JAVA_DOUBLE, offset + PRICE);
+            product.name = getString(slab, offset + NAME, offset + NAME_LENGTH);
+            product.description = getString(slab, offset + DESCRIPTION, offset + DESCRIPTION_LENGTH);
+            if (product instanceof FoodProduct foodProduct) {
+                foodProduct.nutrientValues = getNutrients(slab, offset);
+            }
+            slab.set(ValueLayout.JAVA_INT, offset + GENERATION, handleGeneration(handle) + 1);
+            long word;
+            do {
+                word = (long) WORD.getVolatile(slab, offset + STOCK_WORD);
+            } while (!WORD.compareAndSet(slab, offset + STOCK_WORD, word, nextWord(word, 0)));
+            product.stockWord = nextWord(word, wordStock(word)); //the product's versions go on on the heap
+            product.storeHandle = DETACHED; //published after the heap fields
+            freeString(slab, offset + NAME, offset + NAME_LENGTH);
+            freeString(slab, offset + DESCRIPTION, offset + DESCRIPTION_LENGTH);
+            liveSlots.clear(slot);
+            if (freeCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+            }
+            freeSlots[freeCount++] = slot;
+            compactStringsIfWasteful();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /// Reading
+    String name(Product product) {
+        return read(product, (p, handle) -> handle == DETACHED ? p.name
+                : getString(slab(slot(handle)), offset(slot(handle)) + NAME, offset(slot(handle)) + NAME_LENGTH));
+    }
+
+    String description(Product product) {
+        return read(product, (p, handle) -> handle == DETACHED ? p.description
+                : getString(slab(slot(handle)), offset(slot(handle)) + DESCRIPTION,
+                        offset(slot(handle)) + DESCRIPTION_LENGTH));
+    }
+
+    double price(Product product) {
+        return Double.longBitsToDouble(readLong(product, (p, handle) -> Double.doubleToRawLongBits(
+                handle == DETACHED ? p.price : slab(slot(handle)).get(ValueLayout.JAVA_DOUBLE,
+                        offset(slot(handle)) + PRICE))));
+    }
+
+    int nutrientCount(FoodProduct product) {
+        return (int) readLong(product, (p, handle) -> handle == DETACHED ? ((FoodProduct) p).nutrientValues.length
+                : slab(slot(handle)).get(ValueLayout.JAVA_INT, offset(slot(handle)) + NUTRIENT_COUNT));
+    }
+
+    /*The nutrient function takes a food product and an index in schema order and returns that nutrient value.
+    * Throws an IndexOutOfBoundsException if the product has fewer values.*/
+    int nutrient(FoodProduct product, int index) {
+        return (int) readLong(product, (p, handle) -> {
+            if (handle == DETACHED) {
+                return ((FoodProduct) p).nutrientValues[index];
+            }
+            long offset = offset(slot(handle));
+            MemorySegment slab = slab(slot(handle));
+            return slab.get(ValueLayout.JAVA_INT, offset + NUTRIENTS
+                    + (long) Integer.BYTES * Objects.checkIndex(index,
+                            slab.get(ValueLayout.JAVA_INT, offset + NUTRIENT_COUNT)));
+        });
+    }
+
+    /*The nutrients function takes a food product and returns a copy of its nutrient values*/
+    int[] nutrients(FoodProduct product) {
+        return read(product, (p, handle) -> handle == DETACHED ? ((FoodProduct) p).nutrientValues
+                : getNutrients(slab(slot(handle)), offset(slot(handle))));
+    }
+
+    /*The stock function takes a product and returns its stock, read without locking*/
+    int stock(Product product) {
+        while (true) {
+            long handle = product.storeHandle;
+            if (handle == DETACHED) {
+                return (int) product.stockWord;
+            }
+            int slot = slot(handle);
+            long word = (long) WORD.getVolatile(slab(slot), offset(slot) + STOCK_WORD);
+            if (ownsSlot(handle, slot)) {
+                return (int) word;
+            }
+            Thread.onSpinWait(); //the product is being detached, its stock is about to be on the heap
+        }
+    }
+
+    /*The read function runs a reader of a product's fields without locking, and runs it again under the read lock
+    * if a write was made while it ran. A reader may see a half written or moved slot and throw, that is only passed
+    * on if no write was made.*/
+    private <T> T read(Product product, Reader<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T value = reader.read(product, product.storeHandle);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.read(product, product.storeHandle);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /*The readLong function is read for numbers, without boxing them*/
+    private long readLong(Product product, LongReader reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                long value = reader.read(product, product.storeHandle);
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.read(product, product.storeHandle);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    //reads from the slot of a handle, or from the product's heap fields if the handle is DETACHED
+    private interface Reader<T> {
+        T read(Product product, long handle);
+    }
+
+    private interface LongReader {
+        long read(Product product, long handle);
+    }
+
+    /// Writing
+    /*The setName function takes a product and a name and stores it, on the heap if the product is detached*/
+    void setName(Product product, String name) {
+        long stamp = lock.writeLock();
+        try {
+            long handle = product.storeHandle;
+            if (handle == DETACHED) {
+                product.name = name;
+                return;
+            }
+            long offset = offset(slot(handle));
+            replaceString(slab(slot(handle)), offset + NAME, offset + NAME_LENGTH, name);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void setDescription(Product product, String description) {
+        long stamp = lock.writeLock();
+        try {
+            long handle = product.storeHandle;
+            if (handle == DETACHED) {
+                product.description = description;
+                return;
+            }
+            long offset = offset(slot(handle));
+            replaceString(slab(slot(handle)), offset + DESCRIPTION, offset + DESCRIPTION_LENGTH, description);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    void setPrice(Product product, double price) {
+        long stamp = lock.writeLock();
+        try {
+            long handle = product.storeHandle;
+            if (handle == DETACHED) {
+                product.price = price;
+                return;
+            }
+            slab(slot(handle)).set(ValueLayout.JAVA_DOUBLE, offset(slot(handle)) + PRICE, price);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /*The setNutrients function takes a food product and its nutrient values in schema order and stores them. The
+    * array is kept as it is if the product is detached, so it must not be changed afterwards.*/
+    void setNutrients(FoodProduct product, int[] values) {
+        long stamp = lock.writeLock();
+        try {
+            long handle = product.storeHandle;
+            if (handle == DETACHED) {
+                product.nutrientValues = values;
+                return;
+            }
+            putNutrients(slab(slot(handle)), offset(slot(handle)), values);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /*The changeStock function takes a product and a change to its stock and applies it with compare-and-set,
+    * unless the stock would go below zero or overflow. Returns the stock word before the change, see wordStock and
+    * wordVersion, REFUSED, or NOT_STORED if the product is detached.*/
+    long changeStock(Product product, int delta) {
+        while (true) {
+            long handle = product.storeHandle;
+            if (handle == DETACHED) {
+                return NOT_STORED;
+            }
+            int slot = slot(handle);
+            MemorySegment slab = slab(slot);
+            long offset = offset(slot) + STOCK_WORD;
+            long word = (long) WORD.getVolatile(slab, offset);
+            if (!ownsSlot(handle, slot)) { //checked after reading the word, see detach
+                Thread.onSpinWait(); //being detached, retry once the handle is DETACHED
+                continue;
+            }
+            long stock = (int) word + (long) delta;
+            if (stock < 0 || stock > Integer.MAX_VALUE) {
+                return REFUSED;
+            }
+            if (WORD.compareAndSet(slab, offset, word, nextWord(word, (int) stock))) {
+                return word;
+            }
+        }
+    }
+
+    /*The setStock function takes a product and a stock and sets it. Returns false if the product is detached and
+    * the stock should be set on the heap instead.*/
+    boolean setStock(Product product, int stock) {
+        while (true) {
+            long handle = product.storeHandle;
+            if (handle == DETACHED) {
+                return false;
+            }
+            int slot = slot(handle);
+            long word = (long) WORD.getVolatile(slab(slot), offset(slot) + STOCK_WORD);
+            if (!ownsSlot(handle, slot)) {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (WORD.compareAndSet(slab(slot), offset(slot) + STOCK_WORD, word, nextWord(word, stock))) {
+                return true;
+            }
+        }
+    }
+
+    /// Size
+    /*The size function returns the number of products attached*/
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return slotCount - freeCount;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /*The nativeBytes function returns the bytes of native memory held by the slabs, string chunks and string table*/
+    public long nativeBytes() {
+        long bytes = buckets.byteSize();
+        for (MemorySegment slab : slabs) {
+            bytes += slab.byteSize();
+        }
+        for (MemorySegment chunk : chunks) {
+            bytes += chunk.byteSize();
+        }
+        return bytes;
+    }
+
+    /*The stringBytes function returns the bytes of the names and descriptions held by the products, counting a
+    * string shared by several products once for each. Descriptions left in a description file are not counted.*/
+    public long stringBytes() {
+        long stamp = lock.readLock();
+        try {
+            return stringBytes;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /*The storedStringBytes function returns the bytes of the distinct names and descriptions stored, which is what
+    * stringBytes takes up in the string chunks, headers and garbage not included*/
+    public long storedStringBytes() {
+        long stamp = lock.readLock();
+        try {
+            return storedStringBytes;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /// Slots
+    private static int slot(long handle) {
+        return (int) (handle >>> 32);
+    }
+
+    private static int handleGeneration(long handle) {
+        return (int) handle;
+    }
+
+    /*The ownsSlot function tells if the product with the handle still has the slot. Read after the stock word, a
+    * word taken before the slot was freed can then only be one the detaching compare-and-set replaces.*/
+    private boolean ownsSlot(long handle, int slot) {
+        return slab(slot).get(ValueLayout.JAVA_INT, offset(slot) + GENERATION) == handleGeneration(handle);
+    }
+
+    private MemorySegment slab(int slot) {
+        return slabs[slot >>> SLAB_SHIFT];
+    }
+
+    private static long offset(int slot) {
+        return (slot & (SLAB_SLOTS - 1)) * SLOT_SIZE;
+    }
+
+    /*The wordStock function returns the stock of a stock word, the long holding a stock and its version so both
+    * change in the same compare-and-set. Detached products keep their stock in one on the heap too.*/
+    static int wordStock(long word) {
+        return (int) word;
+    }
+
+    /*The wordVersion function returns the version of a stock word. It wraps around after 2^32 writes, so versions
+    * are compared by the sign of their difference.*/
+    static int wordVersion(long word) {
+        return (int) (word >>> 32);
+    }
+
+    /*The nextWord function takes a stock word and a new stock and returns the word to replace it with*/
+    static long nextWord(long word, int stock) {
+        return ((long) (wordVersion(word) + 1) << 32) | (stock & 0xFFFFFFFFL);
+    }
+
+    /*The allocateSlot function returns a freed slot, or the next unused one, adding a slab when all are used*/
+    private int allocateSlot() {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            slot = slotCount++;
+            if (slot >>> SLAB_SHIFT == slabs.length) {
+                MemorySegment[] grown = Arrays.copyOf(slabs, slabs.length + 1);
+                grown[slabs.length] = arena.allocate(SLAB_SLOTS * SLOT_SIZE, Long.BYTES); //zeroed
+                slabs = grown;
+            }
+        }
+        liveSlots.set(slot);
+        return slot;
+    }
+
+    /// Nutrients
+    private static void putNutrients(MemorySegment slab, long offset, int[] values) {
+        if (values == null) {
+            slab.set(ValueLayout.JAVA_INT, offset + NUTRIENT_COUNT, 0);
+            return;
+        }
+        if (values.length > MAX_NUTRIENTS) {
+            throw new IllegalArgumentException("At most " + MAX_NUTRIENTS + " nutrient values can be stored");
+        }
+        MemorySegment.copy(values, 0, slab, ValueLayout.JAVA_INT, offset + NUTRIENTS, values.length);
+        slab.set(ValueLayout.JAVA_INT, offset + NUTRIENT_COUNT, values.length);
+    }
+
+    private static int[] getNutrients(MemorySegment slab, long offset) {
+        int[] values = new int[slab.get(ValueLayout.JAVA_INT, offset + NUTRIENT_COUNT)];
+        MemorySegment.copy(slab, ValueLayout.JAVA_INT, offset + NUTRIENTS, values, 0, values.length);
+        return values;
+    }
+
+    /// Strings
+    /// Each distinct string is stored once and shared by every slot holding it. Its bytes follow a header in the
+    /// chunk with the number of slots holding it, its length and the next string in its bucket of the string table,
+    /// so finding an equal string when one is put only reads native memory. The table itself is a native array of
+    /// the first string of each bucket, picked by the hash of the bytes.
+    ///
+    /*The putString function takes a slab, the offsets of a string reference and length in it and a String, and
+    * points the reference at the stored copy of the String's UTF-8 bytes, storing them if no slot holds them yet*/
+    private void putString(MemorySegment slab, long refOffset, long lengthOffset, String value) {
+        if (value == null) {
+            slab.set(ValueLayout.JAVA_INT, lengthOffset, -1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        MemorySegment source = MemorySegment.ofArray(bytes);
+        slab.set(ValueLayout.JAVA_LONG, refOffset, intern(source, 0, bytes.length, Arrays.hashCode(bytes)));
+        slab.set(ValueLayout.JAVA_INT, lengthOffset, bytes.length);
+        stringBytes += bytes.length;
+    }
+
+    private String getString(MemorySegment slab, long refOffset, long lengthOffset) {
+        int length = slab.get(ValueLayout.JAVA_INT, lengthOffset);
+        if (length < 0) {
+            return null;
+        }
+        long ref = slab.get(ValueLayout.JAVA_LONG, refOffset);
+        if ((ref & FILE_REFERENCE) != 0) {
+            return descriptionFile.read(ref & ~FILE_REFERENCE, length);
+        }
+        byte[] bytes = new byte[length];
+        MemorySegment.copy(chunks[(int) (ref >>> 32)], ValueLayout.JAVA_BYTE, (int) ref, bytes, 0, length);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //the new string is put before the old one is released, so setting the string a field already holds keeps it
+    private void replaceString(MemorySegment slab, long refOffset, long lengthOffset, String value) {
+        long ref = slab.get(ValueLayout.JAVA_LONG, refOffset);
+        int length = slab.get(ValueLayout.JAVA_INT, lengthOffset);
+        putString(slab, refOffset, lengthOffset, value);
+        release(ref, length);
+        compactStringsIfWasteful();
+    }
+
+    private void freeString(MemorySegment slab, long refOffset, long lengthOffset) {
+        release(slab.get(ValueLayout.JAVA_LONG, refOffset), slab.get(ValueLayout.JAVA_INT, lengthOffset));
+    }
+
+    /*The release function takes the reference and length of a string a slot no longer holds. Once no slot holds
+    * the string its bytes are garbage, left in their chunk until the strings are compacted.*/
+    private void release(long ref, int length) {
+        if (length < 0 || (ref & FILE_REFERENCE) != 0) {
+            return;
+        }
+        stringBytes -= length;
+        MemorySegment chunk = chunk(ref);
+        int holders = chunk.get(ValueLayout.JAVA_INT_UNALIGNED, (int) ref + HOLDERS) - 1;
+        chunk.set(ValueLayout.JAVA_INT_UNALIGNED, (int) ref + HOLDERS, holders);
+        if (holders == 0) {
+            unlink(ref, hash(chunk, (int) ref, length));
+            storedStringBytes -= length;
+            garbageStringBytes += STRING_HEADER + length;
+        }
+    }
+
+    /*The intern function takes a segment and the offset, length and hash of a string's bytes in it, and returns
+    * the reference of the stored copy of those bytes, counting one more slot holding it. The bytes are copied to
+    * the last chunk if no slot holds them yet.*/
+    private long intern(MemorySegment source, long offset, int length, int hash) {
+        long bucket = bucket(hash);
+        for (long ref = buckets.get(ValueLayout.JAVA_LONG, bucket); ref != 0; ref = next(ref)) {
+            MemorySegment chunk = chunk(ref);
+            if (chunk.get(ValueLayout.JAVA_INT_UNALIGNED, (int) ref + STORED_LENGTH) == length
+                    && MemorySegment.mismatch(chunk, (int) ref, (int) ref + length,
+                    source, offset, offset + length) < 0) {
+                int holders = chunk.get(ValueLayout.JAVA_INT_UNALIGNED, (int) ref + HOLDERS);
+                chunk.set(ValueLayout.JAVA_INT_UNALIGNED, (int) ref + HOLDERS, holders + 1);
+                return ref;
+            }
+        }
+        long ref = allocateString(length);
+        MemorySegment chunk = chunk(ref);
+        MemorySegment.copy(source, offset, chunk, (int) ref, length);
+        chunk.set(ValueLayout.JAVA_LONG_UNALIGNED, (int) ref + NEXT_STRING, buckets.get(ValueLayout.JAVA_LONG, bucket));
+        chunk.set(ValueLayout.JAVA_INT_UNALIGNED, (int) ref + HOLDERS, 1);
+        chunk.set(ValueLayout.JAVA_INT_UNALIGNED, (int) ref + STORED_LENGTH, length);
+        buckets.set(ValueLayout.JAVA_LONG, bucket, ref);
+        storedStringBytes += length;
+        if (++storedStrings > buckets.byteSize() / Long.BYTES) {
+            rehash(buckets.byteSize() * 2);
+        }
+        return ref;
+    }
+
+    //takes a string out of its bucket
+    private void unlink(long ref, int hash) {
+        long bucket = bucket(hash);
+        long first = buckets.get(ValueLayout.JAVA_LONG, bucket);
+        if (first == ref) {
+            buckets.set(ValueLayout.JAVA_LONG, bucket, next(ref));
+        } else {
+            long previous = first;
+            while (next(previous) != ref) {
+                previous = next(previous);
+            }
+            chunk(previous).set(ValueLayout.JAVA_LONG_UNALIGNED, (int) previous + NEXT_STRING, next(ref));
+        }
+        storedStrings--;
+    }
+
+    /*The rehash function takes a size in bytes and moves every string into a new bucket array of that size*/
+    private void rehash(long byteSize) {
+        MemorySegment old = buckets;
+        MemorySegment grown = Arena.ofAuto().allocate(byteSize, Long.BYTES); //zeroed, every bucket empty
+        buckets = grown;
+        for (long oldBucket = 0; oldBucket < old.byteSize(); oldBucket += Long.BYTES) {
+            long ref = old.get(ValueLayout.JAVA_LONG, oldBucket);
+            while (ref != 0) {
+                long next = next(ref);
+                MemorySegment chunk = chunk(ref);
+                long bucket = bucket(hash(chunk, (int) ref,
+                        chunk.get(ValueLayout.JAVA_INT_UNALIGNED, (int) ref + STORED_LENGTH)));
+                chunk.set(ValueLayout.JAVA_LONG_UNALIGNED, (int) ref + NEXT_STRING,
+                        grown.get(ValueLayout.JAVA_LONG, bucket));
+                grown.set(ValueLayout.JAVA_LONG, bucket, ref);
+                ref = next;
+            }
+        }
+    }
+
+    //offset of the bucket of a hash in the bucket array
+    private long bucket(int hash) {
+        long mask = buckets.byteSize() / Long.BYTES - 1;
+        int spread = (hash ^ (hash >>> 16)) * 0x9E3779B9; //the low bits alone are weak for short strings
+        return (spread & mask) * Long.BYTES;
+    }
+
+    private long next(long ref) {
+        return chunk(ref).get(ValueLayout.JAVA_LONG_UNALIGNED, (int) ref + NEXT_STRING);
+    }
+
+    private MemorySegment chunk(long ref) {
+        return chunks[(int) (ref >>> 32)];
+    }
+
+    //the same hash as Arrays.hashCode of the bytes
+    private static int hash(MemorySegment segment, long offset, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + segment.get(ValueLayout.JAVA_BYTE, offset + i);
+        }
+        return hash;
+    }
+
+    /*The allocateString function takes a length in bytes and returns a reference to that many free bytes in the
+    * last chunk, behind room for a header, adding a chunk if they don't fit. A string longer than a chunk gets a
+    * chunk of its own.*/
+    private long allocateString(int length) {
+        MemorySegment[] current = chunks;
+        long size = STRING_HEADER + length;
+        if (current.length == 0 || chunkUsed + size > current[current.length - 1].byteSize()) {
+            MemorySegment[] grown = Arrays.copyOf(current, current.length + 1);
+            //one arena per chunk, so chunks dropped by compactStringsIfWasteful are freed on their own
+            grown[current.length] = Arena.ofAuto().allocate(Math.max(STRING_CHUNK_SIZE, size), 1);
+            chunks = grown;
+            current = grown;
+            chunkUsed = 0;
+        }
+        long ref = ((long) (current.length - 1) << 32) | (chunkUsed + STRING_HEADER); //never 0
+        chunkUsed += size;
+        return ref;
+    }
+
+    /*The compactStringsIfWasteful function copies the strings of every live slot into new chunks, storing each
+    * distinct string once again, once more bytes are wasted on released strings than are in use, and at least a
+    * chunk's worth. The old chunks are freed once no reader started before the copy holds them any more.*/
+    private void compactStringsIfWasteful() {
+        if (garbageStringBytes < STRING_CHUNK_SIZE || garbageStringBytes < storedStringBytes) {
+            return;
+        }
+        MemorySegment[] old = chunks;
+        chunks = new MemorySegment[0];
+        chunkUsed = 0;
+        buckets = Arena.ofAuto().allocate(buckets.byteSize(), Long.BYTES);
+        storedStrings = 0;
+        storedStringBytes = 0;
+        for (int slot = liveSlots.nextSetBit(0); slot >= 0; slot = liveSlots.nextSetBit(slot + 1)) {
+            MemorySegment slab = slab(slot);
+            long offset = offset(slot);
+            moveString(old, slab, offset + NAME, offset + NAME_LENGTH);
+            moveString(old, slab, offset + DESCRIPTION, offset + DESCRIPTION_LENGTH);
+        }
+        garbageStringBytes = 0;
+    }
+
+    private void moveString(MemorySegment[] oldChunks, MemorySegment slab, long refOffset, long lengthOffset) {
+        int length = slab.get(ValueLayout.JAVA_INT, lengthOffset);
+        if (length < 0) {
+            return;
+        }
+        long oldRef = slab.get(ValueLayout.JAVA_LONG, refOffset);
+        if ((oldRef & FILE_REFERENCE) != 0) {
+            return; //stays in the description file
+        }
+        MemorySegment oldChunk = oldChunks[(int) (oldRef >>> 32)];
+        slab.set(ValueLayout.JAVA_LONG, refOffset,
+                intern(oldChunk, (int) oldRef, length, hash(oldChunk, (int) oldRef, length)));
+    }
+}
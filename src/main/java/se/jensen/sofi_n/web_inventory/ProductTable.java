@@ -0,0 +1,146 @@
+package se.jensen.sofi_n.web_inventory;
+
+import javafx.application.Platform;
+import javafx.beans.Observable;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.SortedList;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/// The ProductTable class is a TableView mirroring every product in the Inventory, with sortable columns for
+/// articleID, name, category, price and stock.
+///
+/// The table is filled once and then kept up to date through the Inventory's change listener: added and removed
+/// products add and remove single rows, and a stock change only updates the stock of that row, so the view is never
+/// rebuilt. The TableView only creates cells for the rows that are visible, and with a fixed row height it doesn't
+/// need to measure any other rows, so scrolling stays smooth with hundreds of thousands of products.
+///
+/// Changes can be reported from any thread, they are passed on to the JavaFX application thread before the rows
+/// are touched.
+///
+public final class ProductTable implements Inventory.ChangeListener {
+    /// Attributes
+    private final int ROW_HEIGHT = 24;
+    private final TableView<ProductRow> table = new TableView<>();
+    //the extractor makes the list report stock changes, so a table sorted by stock moves the row
+    private final ObservableList<ProductRow> rows = FXCollections.observableArrayList(row -> new Observable[]{row.stock});
+    private final Map<Integer, ProductRow> rowsByID = new HashMap<>(); //only used on the application thread
+
+    /// Table row
+    /// a product and its stock as a property, which the stock cell listens to
+    private static class ProductRow {
+        final Product product;
+        final ReadOnlyIntegerWrapper stock;
+
+        ProductRow(Product product) {
+            this.product = product;
+            this.stock = new ReadOnlyIntegerWrapper(product.getStock());
+        }
+    }
+
+    /// Constructor
+    /*The constructor creates the columns, fills the table with the inventory's products and starts listening for
+    * changes. Must be called on the JavaFX application thread.*/
+    public ProductTable(Inventory inventory) {
+        TableColumn<ProductRow, Integer> idColumn = new TableColumn<>("Article ID");
+        idColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().product.getArticleID()));
+        TableColumn<ProductRow, String> nameColumn = new TableColumn<>("Name");
+        nameColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().product.getName()));
+        nameColumn.setPrefWidth(180);
+        TableColumn<ProductRow, String> categoryColumn = new TableColumn<>("Category");
+        categoryColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().product.category()));
+        categoryColumn.setPrefWidth(120);
+        TableColumn<ProductRow, Double> priceColumn = new TableColumn<>("Price");
+        priceColumn.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().product.getPrice()));
+        TableColumn<ProductRow, Number> stockColumn = new TableColumn<>("Stock");
+        stockColumn.setCellValueFactory(cell -> cell.getValue().stock.getReadOnlyProperty());
+
+        table.getColumns().addAll(List.of(idColumn, nameColumn, categoryColumn, priceColumn, stockColumn));
+        table.setFixedCellSize(ROW_HEIGHT); //rows don't have to be measured
+        table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY_FLEX_LAST_COLUMN);
+
+        //sorting by clicking the column headers
+        SortedList<ProductRow> sortedRows = new SortedList<>(rows);
+        sortedRows.comparatorProperty().bind(table.comparatorProperty());
+        table.setItems(sortedRows);
+
+        //fill in one change, then follow the inventory
+        List<ProductRow> initialRows = new ArrayList<>();
+        for (Product product : inventory.addChangeListener(this)) {
+            ProductRow row = new ProductRow(product);
+            rowsByID.put(product.getArticleID(), row);
+            initialRows.add(row);
+        }
+        rows.setAll(initialRows);
+    }
+
+    /// Getters
+    public TableView<?> view() {return table;}
+
+    /*The scrollTo function takes a position in the inventory's product listing and scrolls the table to it*/
+    public void scrollTo(int position) {
+        table.scrollTo(Math.max(0, Math.min(position, table.getItems().size() - 1)));
+    }
+
+    /// Override functions from ChangeListener interface
+    @Override
+    public void productAdded(Product product) {
+        onApplicationThread(() -> {
+            ProductRow row = new ProductRow(product);
+            rowsByID.put(product.getArticleID(), row);
+            rows.add(row);
+        });
+    }
+
+    /* The productsAdded function adds the rows of an import in one change, so the sorted view is only updated once*/
+    @Override
+    public void productsAdded(List<Product> added) {
+        onApplicationThread(() -> {
+            List<ProductRow> newRows = new ArrayList<>(added.size());
+            for (Product product : added) {
+                ProductRow row = new ProductRow(product);
+                rowsByID.put(product.getArticleID(), row);
+                newRows.add(row);
+            }
+            rows.addAll(newRows);
+        });
+    }
+
+    @Override
+    public void productRemoved(Product product) {
+        onApplicationThread(() -> {
+            ProductRow row = rowsByID.remove(product.getArticleID());
+            if (row != null) {
+                rows.remove(row);
+            }
+        });
+    }
+
+    /* The stockChanged function sets the row's stock to the product's stock at the time it runs, so changes passed on
+    * out of order still end with the latest stock*/
+    @Override
+    public void stockChanged(Product product) {
+        onApplicationThread(() -> {
+            ProductRow row = rowsByID.get(product.getArticleID());
+            if (row != null) {
+                row.stock.set(product.getStock());
+            }
+        });
+    }
+
+    private static void onApplicationThread(Runnable action) {
+        if (Platform.isFxApplicationThread()) {
+            action.run();
+        } else {
+            Platform.runLater(action);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/// The ProductTree class is an immutable list of products in the order they were added to the catalog, used for the
+/// snapshots of the Inventory. Adding or removing a product returns a new tree and leaves the old one as it was, so
+/// a reader holding an old tree can go on listing it while products are added and removed.
+///
+/// The products are kept in chunks of up to CHUNK_SIZE, ordered by the catalog sequence number of each product, in
+/// the nodes of a weight balanced binary tree. A new tree only copies the chunk the product is added to or removed
+/// from and the nodes on the path to it, about 15 for a million products, and shares every other node with the old
+/// tree. Each node knows how many products its subtree holds, so the product at a position and a page starting there
+/// are found without walking the products before it. The chunks keep the tree at a few bytes per product.
+///
+public final class ProductTree {
+    /// Attributes
+    public static final ProductTree EMPTY = new ProductTree(null);
+    private static final int CHUNK_SIZE = 32; //most products in one node
+    //balance parameters: a subtree has at most DELTA times the nodes of its sibling, RATIO picks single or double
+    //rotations when rebalancing
+    private static final int DELTA = 3;
+    private static final int RATIO = 2;
+    private final Node root; //null for the empty tree
+
+    //key is at most the sequence numbers in the chunk and above those in the left subtree, first is the lowest key
+    //in the subtree
+    private record Node(long key, long first, Product[] chunk, Node left, Node right, int count, int nodes) {
+    }
+
+    /// Constructor
+    private ProductTree(Node root) {
+        this.root = root;
+    }
+
+    /*The of function takes products in catalog order and returns a tree of them, built balanced and with full
+    * chunks in one pass instead of adding them one at a time*/
+    public static ProductTree of(List<Product> products) {
+        Product[][] chunks = new Product[(products.size() + CHUNK_SIZE - 1) / CHUNK_SIZE][];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = products.subList(i * CHUNK_SIZE, Math.min(products.size(), (i + 1) * CHUNK_SIZE))
+                    .toArray(new Product[0]);
+        }
+        return new ProductTree(build(chunks, 0, chunks.length));
+    }
+
+    /// Updating
+    /*The with function returns a tree with the product added, or put in place of the product with the same
+    * sequence number*/
+    public ProductTree with(Product product) {
+        long key = product.catalogSequence;
+        if (root == null) {
+            return new ProductTree(node(key, new Product[]{product}, null, null));
+        }
+        return new ProductTree(insert(root, key, product));
+    }
+
+    /*The without function returns a tree without the product, or this tree if the product isn't in it*/
+    public ProductTree without(Product product) {
+        Node removed = root == null ? null : delete(root, product.catalogSequence);
+        return removed == root ? this : new ProductTree(removed);
+    }
+
+    /// Reading
+    public int size() {
+        return count(root);
+    }
+
+    /*The get function takes a position and returns the product there*/
+    public Product get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size());
+        }
+        Node node = root;
+        while (true) {
+            int leftCount = count(node.left);
+            if (index < leftCount) {
+                node = node.left;
+            } else if (index < leftCount + node.chunk.length) {
+                return node.chunk[index - leftCount];
+            } else {
+                index -= leftCount + node.chunk.length;
+                node = node.right;
+            }
+        }
+    }
+
+    /*The range function takes the position of the first product and the largest number of products to return, and
+    * returns those products. Only the nodes on the way to the first product and the products returned are visited.*/
+    public List<Product> range(int offset, int limit) {
+        List<Product> range = new ArrayList<>(Math.max(0, Math.min(limit, size() - Math.max(0, offset))));
+        collect(root, Math.max(0, offset), limit, range);
+        return range;
+    }
+
+    /*The forEach function passes every product to the action, in catalog order*/
+    public void forEach(Consumer<Product> action) {
+        forEach(root, action);
+    }
+
+    /*The toList function returns a new list of every product in catalog order*/
+    public List<Product> toList() {
+        List<Product> products = new ArrayList<>(size());
+        forEach(root, products::add);
+        return products;
+    }
+
+    /// Tree helpers
+    private static int count(Node node) {
+        return node == null ? 0 : node.count;
+    }
+
+    private static int nodes(Node node) {
+        return node == null ? 0 : node.nodes;
+    }
+
+    private static Node node(long key, Product[] chunk, Node left, Node right) {
+        return new Node(key, left == null ? key : left.first, chunk, left, right,
+                count(left) + chunk.length + count(right), nodes(left) + 1 + nodes(right));
+    }
+
+    private static Node build(Product[][] chunks, int from, int to) {
+        if (from == to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        Product[] chunk = chunks[middle];
+        return node(chunk[0].catalogSequence, chunk, build(chunks, from, middle), build(chunks, middle + 1, to));
+    }
+
+    /*The insert function puts the product in the chunk of the node with the greatest key at most its sequence
+    * number, or of the first node if there is none*/
+    private static Node insert(Node node, long key, Product product) {
+        if (key < node.key && node.left != null) {
+            return balance(node.key, node.chunk, insert(node.left, key, product), node.right);
+        }
+        if (node.right != null && key >= node.right.first) {
+            return balance(node.key, node.chunk, node.left, insert(node.right, key, product));
+        }
+        Product[] chunk = node.chunk;
+        int index = indexOf(chunk, key);
+        if (index >= 0) { //same sequence number
+            Product[] replaced = chunk.clone();
+            replaced[index] = product;
+            return node(node.key, replaced, node.left, node.right);
+        }
+        index = -index - 1;
+        long nodeKey = Math.min(node.key, key);
+        if (chunk.length < CHUNK_SIZE) {
+            return node(nodeKey, inserted(chunk, index, product), node.left, node.right);
+        }
+        if (index == chunk.length) { //appending to a full chunk, start the next one and leave this one full
+            return balance(nodeKey, chunk, node.left, insertFirst(node.right, key, new Product[]{product}));
+        }
+        Product[] full = inserted(chunk, index, product);
+        Product[] second = Arrays.copyOfRange(full, CHUNK_SIZE / 2, full.length);
+        return balance(nodeKey, Arrays.copyOf(full, CHUNK_SIZE / 2), node.left,
+                insertFirst(node.right, second[0].catalogSequence, second));
+    }
+
+    private static Node insertFirst(Node node, long key, Product[] chunk) {
+        if (node == null) {
+            return node(key, chunk, null, null);
+        }
+        return balance(node.key, node.chunk, insertFirst(node.left, key, chunk), node.right);
+    }
+
+    //returns the same node if the product isn't in its subtree, so nothing is copied
+    private static Node delete(Node node, long key) {
+        if (key < node.key) {
+            if (node.left == null) {
+                return node;
+            }
+            Node left = delete(node.left, key);
+            return left == node.left ? node : balance(node.key, node.chunk, left, node.right);
+        }
+        if (node.right != null && key >= node.right.first) {
+            Node right = delete(node.right, key);
+            return right == node.right ? node : balance(node.key, node.chunk, node.left, right);
+        }
+        int index = indexOf(node.chunk, key);
+        if (index < 0) {
+            return node;
+        }
+        if (node.chunk.length == 1) {
+            return glue(node.left, node.right);
+        }
+        Product[] chunk = new Product[node.chunk.length - 1];
+        System.arraycopy(node.chunk, 0, chunk, 0, index);
+        System.arraycopy(node.chunk, index + 1, chunk, index, chunk.length - index);
+        return node(node.key, chunk, node.left, node.right); //the key stays a lower bound
+    }
+
+    /*The glue function joins the two subtrees of a removed node, moving the nearest node of the larger one up*/
+    private static Node glue(Node left, Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.nodes > right.nodes) {
+            Node last = left;
+            while (last.right != null) {
+                last = last.right;
+            }
+            return balance(last.key, last.chunk, deleteLast(left), right);
+        }
+        Node first = right;
+        while (first.left != null) {
+            first = first.left;
+        }
+        return balance(first.key, first.chunk, left, deleteFirst(right));
+    }
+
+    private static Node deleteFirst(Node node) {
+        return node.left == null ? node.right : balance(node.key, node.chunk, deleteFirst(node.left), node.right);
+    }
+
+    private static Node deleteLast(Node node) {
+        return node.right == null ? node.left : balance(node.key, node.chunk, node.left, deleteLast(node.right));
+    }
+
+    /*The balance function builds a node from subtrees that were balanced before one node was added to or removed
+    * from one of them, rotating once or twice if one side has become too large*/
+    private static Node balance(long key, Product[] chunk, Node left, Node right) {
+        int leftNodes = nodes(left);
+        int rightNodes = nodes(right);
+        if (leftNodes + rightNodes <= 1) {
+            return node(key, chunk, left, right);
+        }
+        if (rightNodes > DELTA * leftNodes) {
+            if (nodes(right.left) < RATIO * nodes(right.right)) { //single left rotation
+                return node(right.key, right.chunk, node(key, chunk, left, right.left), right.right);
+            }
+            Node middle = right.left; //double rotation
+            return node(middle.key, middle.chunk, node(key, chunk, left, middle.left),
+                    node(right.key, right.chunk, middle.right, right.right));
+        }
+        if (leftNodes > DELTA * rightNodes) {
+            if (nodes(left.right) < RATIO * nodes(left.left)) { //single right rotation
+                return node(left.key, left.chunk, left.left, node(key, chunk, left.right, right));
+            }
+            Node middle = left.right;
+            return node(middle.key, middle.chunk, node(left.key, left.chunk, left.left, middle.left),
+                    node(key, chunk, middle.right, right));
+        }
+        return node(key, chunk, left, right);
+    }
+
+    /*The indexOf function finds a sequence number in a chunk like Arrays.binarySearch, returning -(insertion point)
+    * - 1 if it isn't there*/
+    private static int indexOf(Product[] chunk, long key) {
+        int low = 0;
+        int high = chunk.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long sequence = chunk[middle].catalogSequence;
+            if (sequence < key) {
+                low = middle + 1;
+            } else if (sequence > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -low - 1;
+    }
+
+    private static Product[] inserted(Product[] chunk, int index, Product product) {
+        Product[] grown = new Product[chunk.length + 1];
+        System.arraycopy(chunk, 0, grown, 0, index);
+        grown[index] = product;
+        System.arraycopy(chunk, index, grown, index + 1, chunk.length - index);
+        return grown;
+    }
+
+    //offset is counted from the start of the node's subtree
+    private static void collect(Node node, int offset, int limit, List<Product> range) {
+        if (node == null || range.size() >= limit) {
+            return;
+        }
+        int leftCount = count(node.left);
+        if (offset < leftCount) {
+            collect(node.left, offset, limit, range);
+        }
+        for (int i = Math.max(0, offset - leftCount); i < node.chunk.length && range.size() < limit; i++) {
+            range.add(node.chunk[i]);
+        }
+        collect(node.right, Math.max(0, offset - leftCount - node.chunk.length), limit, range);
+    }
+
+    private static void forEach(Node node, Consumer<Product> action) {
+        if (node != null) {
+            forEach(node.left, action);
+            for (Product product : node.chunk) {
+                action.accept(product);
+            }
+            forEach(node.right, action);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/// The SearchIndex class is an inverted index over the names and descriptions of products, used to find products by
+/// words instead of by articleID. Name and description are split into lower case words (tokens) at every character
+/// that isn't a letter or digit, so "Vadderade dragremmar" gives "vadderade" and "dragremmar". For every token the
+/// index keeps the sorted articleIDs of the products having it in the name, and of those having it in the
+/// description.
+///
+/// A query is split the same way and every word must match, either a whole token or the start of one, so
+/// "lift strap" finds "Lifting straps". Results are ranked in four tiers, best first:
+///   every word is a whole token in the name
+///   every word starts a token in the name
+///   every word is a whole token in the name or description
+///   every word starts a token in the name or description
+/// and by articleID within a tier. Each tier stops as soon as enough results are found. If one of the words is rare,
+/// its products are checked against the other words. If every word is common, each word's products are turned into
+/// a bit per articleID and the words are combined a 64 bit word at a time. Lists of common tokens keep such a bit set
+/// next to the sorted IDs, which costs no more memory than the list itself.
+///
+/// Adding and removing must not happen at the same time as anything else, the Inventory class only does that under
+/// the write lock of catalogLock. Searches only read, so several can run at once under the read lock.
+///
+public class SearchIndex {
+    /// Attributes
+    private static final int NO_MORE = Integer.MAX_VALUE; //past the last articleID of a list
+    private static final int MIN_DENSE_COUNT = 1024; //shorter lists never get a bit set
+    private final Map<String, Term> terms = new HashMap<>(); //token lookups when adding and removing
+    private final TreeMap<String, Term> vocabulary = new TreeMap<>(); //same terms in order, for prefix lookups
+
+    /// Term
+    /// the articleIDs of the products that have one token in their name and in their description
+    private static class Term {
+        final IdList names = new IdList();
+        final IdList descriptions = new IdList();
+    }
+
+    /// ID list
+    /// a growable sorted array of articleIDs, with a bit set of the same IDs once the list is dense enough
+    private static class IdList {
+        int[] ids = new int[2];
+        int count;
+        long[] bits; //bit n is set if articleID n is in the list
+
+        /*The add function inserts the ID in order, unless it is already in the list. IDs are usually higher than any
+        * before, those are just appended.*/
+        void add(int id) {
+            int position = count;
+            if (count > 0 && ids[count - 1] >= id) {
+                position = Arrays.binarySearch(ids, 0, count, id);
+                if (position >= 0) {
+                    return;
+                }
+                position = -position - 1;
+            }
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            System.arraycopy(ids, position, ids, position + 1, count - position);
+            ids[position] = id;
+            count++;
+            if (bits != null) {
+                if (id >>> 6 >= bits.length) {
+                    bits = Arrays.copyOf(bits, Math.max((id >>> 6) + 1, bits.length * 2));
+                }
+                bits[id >>> 6] |= 1L << id;
+            } else if (count >= MIN_DENSE_COUNT && (long) count * 32 >= ids[count - 1]) {
+                //a bit per ID up to the highest now takes no more memory than the int array
+                bits = new long[(ids[count - 1] >>> 6) + 1];
+                for (int i = 0; i < count; i++) {
+                    bits[ids[i] >>> 6] |= 1L << ids[i];
+                }
+            }
+        }
+
+        void remove(int id) {
+            int position = Arrays.binarySearch(ids, 0, count, id);
+            if (position >= 0) {
+                System.arraycopy(ids, position + 1, ids, position, count - position - 1);
+                count--;
+                if (bits != null) {
+                    bits[id >>> 6] &= ~(1L << id);
+                }
+            }
+        }
+
+        boolean contains(int id) {
+            if (bits != null) {
+                return id >>> 6 < bits.length && (bits[id >>> 6] & 1L << id) != 0;
+            }
+            return Arrays.binarySearch(ids, 0, count, id) >= 0;
+        }
+
+        /*The setBitsIn function sets the bit of every ID in the list in the passed bit set*/
+        void setBitsIn(long[] target) {
+            if (bits != null) {
+                for (int i = 0; i < Math.min(bits.length, target.length); i++) {
+                    target[i] |= bits[i];
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    target[ids[i] >>> 6] |= 1L << ids[i];
+                }
+            }
+        }
+    }
+
+    /// Word match
+    /// the ID lists of every token one query word matches in one tier
+    private static class WordMatch {
+        final List<IdList> lists = new ArrayList<>();
+        long size; //IDs in all lists together
+        int highestID;
+
+        void add(IdList list) {
+            if (list.count > 0) {
+                lists.add(list);
+                size += list.count;
+                highestID = Math.max(highestID, list.ids[list.count - 1]);
+            }
+        }
+
+        boolean contains(int id) {
+            for (IdList list : lists) {
+                if (list.contains(id)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /// Updating
+    /*The add function adds the tokens of the product's name and description to the index*/
+    public void add(Product product) {
+        for (String token : tokenize(product.getName())) {
+            termFor(token).names.add(product.getArticleID());
+        }
+        for (String token : tokenize(product.getDescription())) {
+            termFor(token).descriptions.add(product.getArticleID());
+        }
+    }
+
+    /*The remove function removes the tokens of the product's name and description from the index, and any token no
+    * other product has*/
+    public void remove(Product product) {
+        for (String token : tokenize(product.getName())) {
+            Term term = terms.get(token);
+            if (term != null) {
+                term.names.remove(product.getArticleID());
+                dropIfEmpty(token, term);
+            }
+        }
+        for (String token : tokenize(product.getDescription())) {
+            Term term = terms.get(token);
+            if (term != null) {
+                term.descriptions.remove(product.getArticleID());
+                dropIfEmpty(token, term);
+            }
+        }
+    }
+
+    public void clear() {
+        terms.clear();
+        vocabulary.clear();
+    }
+
+    /// Searching
+    /*The search function takes a query and the largest number of results to return, and returns the articleIDs of
+    * the products matching every word of the query, best match first. An empty query matches nothing.*/
+    public int[] search(String query, int limit) {
+        List<String> words = tokenize(query);
+        if (words.isEmpty() || limit < 1) {
+            return new int[0];
+        }
+        int[] results = new int[limit];
+        int count = 0;
+        //tiers from best to worst: names only or names and descriptions, whole tokens or prefixes
+        boolean[][] tiers = {{false, true}, {false, false}, {true, true}, {true, false}};
+        for (boolean[] tier : tiers) {
+            WordMatch[] matches = new WordMatch[words.size()];
+            for (int w = 0; w < words.size(); w++) {
+                matches[w] = match(words.get(w), tier[0], tier[1]);
+                if (matches[w].lists.isEmpty()) {
+                    matches = null; //a word without any match, nothing in this tier
+                    break;
+                }
+            }
+            if (matches != null) {
+                count = searchTier(matches, results, count);
+                if (count == limit) {
+                    break;
+                }
+            }
+        }
+        return Arrays.copyOf(results, count);
+    }
+
+    /*The match function finds the ID lists of the products matching one query word, in names only or also in
+    * descriptions, as a whole token or as the start of one*/
+    private WordMatch match(String word, boolean descriptions, boolean wholeToken) {
+        WordMatch match = new WordMatch();
+        if (wholeToken) {
+            Term term = terms.get(word);
+            if (term != null) {
+                match.add(term.names);
+                if (descriptions) {
+                    match.add(term.descriptions);
+                }
+            }
+        } else {
+            for (Term term : vocabulary.subMap(word, true, word + Character.MAX_VALUE, false).values()) {
+                match.add(term.names);
+                if (descriptions) {
+                    match.add(term.descriptions);
+                }
+            }
+        }
+        return match;
+    }
+
+    /*The searchTier function adds the IDs matched by every word to the results in order, skipping IDs already found
+    * in a better tier, until the results are full. Goes through the IDs of the rarest word if it is rare enough,
+    * otherwise combines bit sets of all words. Returns the new number of results.*/
+    private static int searchTier(WordMatch[] matches, int[] results, int count) {
+        int alreadyFound = count;
+        WordMatch rarest = matches[0];
+        int highestID = 0;
+        for (WordMatch match : matches) {
+            if (match.size < rarest.size) {
+                rarest = match;
+            }
+            highestID = Math.max(highestID, match.highestID);
+        }
+        int bitWords = (highestID >>> 6) + 1;
+
+        if (rarest.size <= bitWords) {
+            //check each product of the rarest word against the others
+            Cursor cursor = rarest.lists.size() == 1 ? new ListCursor(rarest.lists.get(0))
+                    : new UnionCursor(rarest.lists);
+            for (int id = cursor.advance(0); id != NO_MORE && count < results.length; id = cursor.advance(id + 1)) {
+                if (matchesAll(matches, rarest, id) && !contains(results, alreadyFound, id)) {
+                    results[count++] = id;
+                }
+            }
+            return count;
+        }
+
+        //every word is common, AND their bit sets together
+        long[] combined = null;
+        for (WordMatch match : matches) {
+            long[] wordBits = new long[bitWords];
+            for (IdList list : match.lists) {
+                list.setBitsIn(wordBits);
+            }
+            if (combined == null) {
+                combined = wordBits;
+            } else {
+                for (int i = 0; i < bitWords; i++) {
+                    combined[i] &= wordBits[i];
+                }
+            }
+        }
+        for (int i = 0; i < bitWords && count < results.length; i++) {
+            long word = combined[i];
+            while (word != 0 && count < results.length) {
+                int id = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1; //clear lowest bit
+                if (!contains(results, alreadyFound, id)) {
+                    results[count++] = id;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static boolean matchesAll(WordMatch[] matches, WordMatch skip, int id) {
+        for (WordMatch match : matches) {
+            if (match != skip && !match.contains(id)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /// Helpers
+    /*The tokenize function splits text into its distinct lower case tokens, at every character that isn't a letter
+    * or digit*/
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        text = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordCharacter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordCharacter && start < 0) {
+                start = i;
+            } else if (!wordCharacter && start >= 0) {
+                String token = text.substring(start, i);
+                if (!tokens.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    private Term termFor(String token) {
+        Term term = terms.get(token);
+        if (term == null) {
+            term = new Term();
+            terms.put(token, term);
+            vocabulary.put(token, term);
+        }
+        return term;
+    }
+
+    private void dropIfEmpty(String token, Term term) {
+        if (term.names.count == 0 && term.descriptions.count == 0) {
+            terms.remove(token);
+            vocabulary.remove(token);
+        }
+    }
+
+    private static boolean contains(int[] ids, int count, int id) {
+        for (int i = 0; i < count; i++) {
+            if (ids[i] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /// Cursors
+    /// move forward through sorted IDs, advance returns the first ID at or after the target, or NO_MORE
+    private interface Cursor {
+        int advance(int target);
+    }
+
+    /* The ListCursor class moves through one sorted list*/
+    private static class ListCursor implements Cursor {
+        private final IdList list;
+        private int position = 0;
+
+        ListCursor(IdList list) {
+            this.list = list;
+        }
+
+        @Override
+        public int advance(int target) {
+            while (position < list.count && list.ids[position] < target) {
+                position++;
+            }
+            return position < list.count ? list.ids[position] : NO_MORE;
+        }
+    }
+
+    /* The UnionCursor class moves through several lists at once, as if their IDs were one sorted list*/
+    private static class UnionCursor implements Cursor {
+        private final ListCursor[] cursors;
+
+        UnionCursor(List<IdList> lists) {
+            cursors = new ListCursor[lists.size()];
+            for (int i = 0; i < cursors.length; i++) {
+                cursors[i] = new ListCursor(lists.get(i));
+            }
+        }
+
+        @Override
+        public int advance(int target) {
+            int lowest = NO_MORE;
+            for (ListCursor cursor : cursors) {
+                lowest = Math.min(lowest, cursor.advance(target));
+            }
+            return lowest;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package se.jensen.sofi_n.web_inventory;
+
+import java.io.IOException;
+
+/// The ServerMain class starts the inventory in server mode, without any window. It uses no JavaFX classes, so it
+/// runs without JavaFX on the classpath: java -cp target/classes se.jensen.sofi_n.web_inventory.ServerMain [port]
+public class ServerMain {
+    //start with -Dinventory.lazyDescriptions=true to decode descriptions only when a product is asked for
+    private static final boolean LAZY_DESCRIPTIONS = Boolean.getBoolean("inventory.lazyDescriptions");
+
+    /*The main function creates an HttpUI and an inventory object using it, with the same files as the desktop
+    * application, and starts serving requests on the port passed as first argument, or 8080.*/
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        HttpUI ui = new HttpUI(); // creates instance of UI class
+        // creating instance of inventory logic handler
+        Inventory inventory = new Inventory(ui, "Products.txt", "nutrient_tables.txt", LAZY_DESCRIPTIONS);
+        ui.setInventory(inventory);
+
+        ui.start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            ui.stop(1); //finish running requests on Ctrl+C
+            inventory.close(); //then write everything still queued
+        }));
+        System.out.println("Inventory server listening on port " + port);
+    }
+}
@@ -0,0 +1,7 @@
+package se.jensen.sofi_n.web_inventory;
+
+/// The StockAdjustment record is one line of a stock batch for the Inventory class's adjustStock function: the
+/// articleID of a product and how much its stock should change, positive to increase and negative to decrease.
+///
+public record StockAdjustment(int articleID, int delta) {
+}
@@ -1,5 +1,6 @@
 package se.jensen.sofi_n.web_inventory;
 
+import java.util.List;
 import java.util.function.Consumer;
 
 /// The UI interface is intended to act as a bridge between the logic in the Inventory class and any user interface
@@ -17,6 +18,16 @@ public interface UI {
     /* The showTextWithTitle function takes two string arguments, a title and a message, and displays them.*/
     void showTextWithTitle(String title, String message);
 
+    /* The showProductPage function takes a ProductPage with one page of the product listing and a Consumer<Integer>
+     * onPageRequested, and displays the products on the page with articleID, name and stock. To show another page,
+     * the position of that page (like page.nextOffset()) is passed to onPageRequested.*/
+    void showProductPage(ProductPage page, Consumer<Integer> onPageRequested);
+
+    /* The showSearchResults function takes the searched String, the matching products, best match first, and a
+     * Consumer<Integer> onProductSelected, and displays the products. The articleID of a product the user picks from
+     * the results is passed to onProductSelected.*/
+    void showSearchResults(String query, List<Product> results, Consumer<Integer> onProductSelected);
+
     /* The promptProducitDetails function is intended to take an integer for the articeID and a Consumer variable of
      * the type ProductInputDetails (See ProductsInputDetails class) and use user input to create an object of
      * ProductInputDetails then preform the onResult actions passed.*/
@@ -30,11 +41,23 @@ public interface UI {
     /* The promptNutrientInfo function should take a FoodProduct type object, and a Consumer argument of
      * NutrientTableValues type with actions to perform on resulting NutrientTableValues object. The function should
      * then prompt the user for nutrient information, with an added prompt Caffeine for products of EnergyDrink type,
-     * then create an object of the helper class NutrientTableValues and perform the passed action*/
+     * then create an object of the helper class NutrientTableValues and perform the passed action. A UI where the
+     * nutrient table can be left out passes null instead.*/
     void promptNutrientInfo(FoodProduct foodProduct, Consumer<NutrientTableValues> onResult);
 
     /*The displayNutrientInformation function should take a Product type object as argument and display its information
     * to the user.*/
     void displayProductInformation(Product product);
 
+    /*The showProductNotFound function is called when there is no product with the article ID, or it was removed
+    * while being changed. It shows "Product not found" as an error by default.*/
+    default void showProductNotFound(int id) {
+        showError("Product not found");
+    }
+
+    /*The showAddedProduct function is called with a new product once it has been stored by the add product flow. It
+    * does nothing by default.*/
+    default void showAddedProduct(Product product) {
+    }
+
 }
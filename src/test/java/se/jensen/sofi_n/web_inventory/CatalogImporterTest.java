@@ -0,0 +1,127 @@
+package se.jensen.sofi_n.web_inventory;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/// The CatalogImporterTest class imports small catalogs written out in each test and checks how the rows are split
+/// into fields: semicolon rows like the products file, CSV rows with a header and quoted fields, and quotes that
+/// aren't closed, in a product row or in the header.
+///
+class CatalogImporterTest {
+    /// Attributes
+    private final List<Product> imported = new ArrayList<>(); //what the sink kept, in catalog order
+    private int nextID = 20000;
+
+    /*The importCatalog function imports the catalog text with a sink that gives every product without an articleID
+    * the next free one and keeps it*/
+    private ImportReport importCatalog(String catalog) {
+        CatalogImporter importer = new CatalogImporter(new BufferedReader(new StringReader(catalog)), "test",
+                product -> {
+                    if (product.getArticleID() == 0) {
+                        product.setArticleID(nextID++);
+                    }
+                    imported.add(product);
+                    return null;
+                });
+        return importer.run();
+    }
+
+    /// Tests
+    @Test
+    void readsSemicolonRowsLikeTheProductsFile() {
+        ImportReport report = importCatalog("""
+                Accessory;10500;Shaker;99.0;Leak proof;3
+                EnergyDrink;;Boost;25.0;Citrus;12;45;0;11;0;80
+                """);
+
+        assertTrue(report.completed());
+        assertEquals(2, report.imported());
+        assertEquals(0, report.rejected());
+        Product shaker = imported.get(0);
+        assertEquals(10500, shaker.getArticleID());
+        assertEquals("Shaker", shaker.getName());
+        assertEquals(3, shaker.getStock());
+        FoodProduct boost = (FoodProduct) imported.get(1);
+        assertEquals(20000, boost.getArticleID());
+        assertEquals(12, boost.getStock());
+        assertEquals(80, boost.getNutrientTable().get("Caffeine(mg)"));
+    }
+
+    @Test
+    void readsQuotedCsvFieldsInHeaderOrder() {
+        ImportReport report = importCatalog("""
+                name,"price",category,description
+                "Strap, ""pro"" 2",99.5,Accessories,"Soft, padded"
+                Plain,10,accessory,No quotes
+                """);
+
+        assertTrue(report.completed());
+        assertEquals(2, report.imported());
+        assertEquals("Strap, \"pro\" 2", imported.get(0).getName());
+        assertEquals(99.5, imported.get(0).getPrice());
+        assertEquals("Soft, padded", imported.get(0).getDescription());
+        assertEquals("No quotes", imported.get(1).getDescription());
+    }
+
+    @Test
+    void rejectsRowWithUnclosedQuote() {
+        ImportReport report = importCatalog("""
+                category,name,price,description
+                Accessories,Belt,199,Leather
+                Accessories,"Gloves,49,Grip
+                Accessories,Towel,59,Cotton
+                """);
+
+        assertTrue(report.completed());
+        assertEquals(3, report.rows());
+        assertEquals(2, report.imported());
+        assertEquals(List.of("Line 3: Missing closing quote"), report.errors());
+        assertEquals("Towel", imported.get(1).getName());
+    }
+
+    @Test
+    void rejectsUnclosedQuoteInFirstRowWithoutHeader() {
+        ImportReport report = importCatalog("""
+                Accessory;;"Belt;199.0;Leather;2
+                Accessory;;Towel;59.0;Cotton;1
+                """);
+
+        assertTrue(report.completed());
+        assertEquals(2, report.rows());
+        assertEquals(1, report.imported());
+        assertEquals(List.of("Line 1: Missing closing quote"), report.errors());
+        assertEquals("Towel", imported.get(0).getName());
+    }
+
+    @Test
+    void failsOnUnclosedQuoteInHeader() {
+        ImportReport report = importCatalog("""
+
+                category,"name,price,description
+                Accessories,Belt,199,Leather
+                """);
+
+        assertFalse(report.completed());
+        assertEquals("Line 2: Missing closing quote", report.failure());
+        assertEquals(0, report.imported());
+        assertTrue(imported.isEmpty());
+    }
+
+    @Test
+    void reportsEmptyCatalog() {
+        ImportReport report = importCatalog("");
+
+        assertTrue(report.completed());
+        assertEquals(0, report.rows());
+        assertNull(report.failure());
+    }
+}
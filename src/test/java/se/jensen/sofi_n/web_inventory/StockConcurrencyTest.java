@@ -0,0 +1,168 @@
+package se.jensen.sofi_n.web_inventory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/// The StockConcurrencyTest class increases and decreases the stock of a few products from many threads at once,
+/// through the same Inventory flows the UIs use, and checks that no change is lost and the stock never goes below
+/// zero, both in memory and after the journal is replayed on the next start.
+///
+class StockConcurrencyTest {
+    /// Attributes
+    private static final int THREADS = 8;
+    private static final int CHANGES_PER_THREAD = 20_000;
+    private static final int PRODUCTS = 4;
+    private static final int FIRST_ID = 10000;
+    private static final int START_STOCK = 10; //low, so many decreases find too little stock
+
+    @TempDir
+    Path directory;
+
+    /// Stock UI
+    /// answers every quantity prompt with the quantity the calling thread has set, and collects the errors
+    private static class StockUI implements UI {
+        final ThreadLocal<Integer> quantity = new ThreadLocal<>();
+        final ConcurrentLinkedQueue<String> errors = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public void promptInput(String prompt, Consumer<String> onResult) {
+            onResult.accept(String.valueOf(quantity.get()));
+        }
+
+        @Override
+        public void showError(String error) {
+            errors.add(error);
+        }
+
+        @Override
+        public void showTextWithTitle(String title, String message) {
+        }
+
+        @Override
+        public void showProductPage(ProductPage page, Consumer<Integer> onPageRequested) {
+        }
+
+        @Override
+        public void showSearchResults(String query, List<Product> results, Consumer<Integer> onProductSelected) {
+        }
+
+        @Override
+        public void promptProductDetails(int articleID, Consumer<ProductInputDetails> onResult) {
+        }
+
+        @Override
+        public void showCategorySelection(Consumer<String> onCategorySelected) {
+        }
+
+        @Override
+        public void promptNutrientInfo(FoodProduct foodProduct, Consumer<NutrientTableValues> onResult) {
+        }
+
+        @Override
+        public void displayProductInformation(Product product) {
+        }
+    }
+
+    /// Tests
+    @Test
+    void concurrentStockChangesAreNeitherLostNorOversold() throws Exception {
+        Path products = directory.resolve("products.txt");
+        Path nutrients = directory.resolve("nutrient_tables.txt");
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < PRODUCTS; i++) {
+            lines.add("Accessory;" + (FIRST_ID + i) + ";Straps " + i + ";99.0;Lifting straps;" + START_STOCK);
+        }
+        Files.write(products, lines);
+        Files.write(nutrients, List.of());
+
+        StockUI ui = new StockUI();
+        Inventory inventory = new Inventory(ui, products.toString(), nutrients.toString());
+        AtomicLongArray added = new AtomicLongArray(PRODUCTS);
+        AtomicLongArray removed = new AtomicLongArray(PRODUCTS);
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicInteger lowestSeen = new AtomicInteger(Integer.MAX_VALUE);
+        List<Throwable> failures = new ArrayList<>();
+
+        //reads the stock all the time the changes run and keeps the lowest value seen
+        Thread watcher = new Thread(() -> {
+            while (running.get()) {
+                for (int i = 0; i < PRODUCTS; i++) {
+                    lowestSeen.accumulateAndGet(inventory.searchProduct(FIRST_ID + i).getStock(), Math::min);
+                }
+            }
+        });
+        watcher.start();
+
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            SplittableRandom random = new SplittableRandom(t);
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int n = 0; n < CHANGES_PER_THREAD; n++) {
+                        int index = random.nextInt(PRODUCTS);
+                        int quantity = 1 + random.nextInt(5);
+                        ui.quantity.set(quantity);
+                        if (random.nextBoolean()) {
+                            inventory.userIncreaseStock(FIRST_ID + index, () -> added.addAndGet(index, quantity));
+                        } else {
+                            inventory.userDecreaseStock(FIRST_ID + index, () -> removed.addAndGet(index, quantity));
+                        }
+                    }
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        running.set(false);
+        watcher.join();
+
+        assertTrue(failures.isEmpty(), () -> "Changes failed: " + failures);
+        assertTrue(lowestSeen.get() >= 0, () -> "Stock went below zero: " + lowestSeen.get());
+        for (String error : ui.errors) {
+            assertEquals("Not enough stock", error);
+        }
+        int[] expected = new int[PRODUCTS];
+        for (int i = 0; i < PRODUCTS; i++) {
+            expected[i] = (int) (START_STOCK + added.get(i) - removed.get(i));
+            assertEquals(expected[i], inventory.searchProduct(FIRST_ID + i).getStock(), "stock of " + (FIRST_ID + i));
+        }
+        inventory.close();
+
+        //the journal replayed on the next start gives the same stock
+        Inventory reopened = new Inventory(new StockUI(), products.toString(), nutrients.toString());
+        try {
+            for (int i = 0; i < PRODUCTS; i++) {
+                assertEquals(expected[i], reopened.searchProduct(FIRST_ID + i).getStock(),
+                        "replayed stock of " + (FIRST_ID + i));
+            }
+        } finally {
+            reopened.close();
+        }
+    }
+}